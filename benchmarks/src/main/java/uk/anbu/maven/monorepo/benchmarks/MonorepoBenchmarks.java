@@ -0,0 +1,156 @@
+package uk.anbu.maven.monorepo.benchmarks;
+
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.anbu.maven.monorepo.BaselineLocator;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer;
+import uk.anbu.maven.monorepo.ModelCache;
+import uk.anbu.maven.monorepo.ModuleChangeDetector;
+import uk.anbu.maven.monorepo.ModuleGraph;
+import uk.anbu.maven.monorepo.ModuleTrie;
+import uk.anbu.maven.monorepo.PomVersionRewriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MonorepoBenchmarks {
+
+    @Param({"100", "1000", "10000"})
+    private int modules;
+
+    @Param({"1"})
+    private int nestingDepth;
+
+    @Param({"3"})
+    private int dependencyFanOut;
+
+    @Param({"200"})
+    private int historyLength;
+
+    @Param({"50"})
+    private int tagCount;
+
+    private final Log log = new QuietLog();
+
+    private File root;
+    private Git git;
+    private Repository repository;
+    private ObjectReader reader;
+    private ObjectId head;
+    private ObjectId headTree;
+    private ObjectId baselineTree;
+    private ModuleTrie moduleTrie;
+    private DependencyUpdateAnalyzer analyzer;
+    private List<String> changedModules;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        root = Files.createTempDirectory("synthetic-monorepo").toFile();
+        SyntheticMonorepo.builder()
+                .modules(modules)
+                .nestingDepth(nestingDepth)
+                .dependencyFanOut(dependencyFanOut)
+                .historyLength(historyLength)
+                .tagCount(tagCount)
+                .build()
+                .generate(root);
+
+        git = Git.open(root);
+        repository = git.getRepository();
+        reader = repository.newObjectReader();
+        head = repository.resolve("HEAD");
+        headTree = repository.resolve("HEAD^{tree}");
+        Optional<ObjectId> baseline = new BaselineLocator(log, repository, SyntheticMonorepo.TAG_PREFIX, null)
+                .findBaseline(head);
+        try (RevWalk walk = new RevWalk(repository)) {
+            baselineTree = walk.parseCommit(baseline.orElseThrow()).getTree().getId();
+        }
+
+        moduleTrie = ModuleTrie.fromDeclaredModules(new File(root, "pom.xml"), new ModelCache());
+        analyzer = new DependencyUpdateAnalyzer();
+        analyzer.buildDependencyGraph(rootPom());
+        // one percent of the modules, spread over the whole range
+        changedModules = new ArrayList<>();
+        List<String> allModules = moduleTrie.getAllModules();
+        for (int i = 0; i < allModules.size(); i += 100) {
+            changedModules.add(allModules.get(i));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetWorkingTree() throws Exception {
+        git.checkout().setAllPaths(true).call();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        reader.close();
+        git.close();
+        try (Stream<Path> paths = Files.walk(root.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public ModuleGraph graphBuild() {
+        var freshAnalyzer = new DependencyUpdateAnalyzer(new ModelCache());
+        freshAnalyzer.buildDependencyGraph(rootPom());
+        return freshAnalyzer.getModuleGraph();
+    }
+
+    @Benchmark
+    public Set<DependencyUpdateAnalyzer.Module> findModulesToUpdate() {
+        return analyzer.findModulesToUpdate(changedModules);
+    }
+
+    @Benchmark
+    public Optional<ObjectId> baselineLookup() throws IOException {
+        return new BaselineLocator(log, repository, SyntheticMonorepo.TAG_PREFIX, null).findBaseline(head);
+    }
+
+    @Benchmark
+    public Set<String> diffToModules() throws IOException {
+        return new ModuleChangeDetector(log, moduleTrie, List.of()).findChangedModules(reader, baselineTree, headTree);
+    }
+
+    @Benchmark
+    public PomVersionRewriter.Result versionBump() {
+        return new PomVersionRewriter(log, root).incrementVersions(changedModules);
+    }
+
+    private String rootPom() {
+        return new File(root, "pom.xml").getAbsolutePath();
+    }
+}
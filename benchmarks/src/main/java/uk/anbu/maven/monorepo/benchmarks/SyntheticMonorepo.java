@@ -0,0 +1,191 @@
+package uk.anbu.maven.monorepo.benchmarks;
+
+import lombok.Builder;
+import lombok.Value;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Generates a local monorepo with a git history for benchmarking. Leaf modules are spread over nested
+ * aggregators, depend only on lower-numbered modules so the graph stays acyclic, and every commit after the
+ * first edits the sources of a few random modules. Build tags are spread evenly over the history.
+ */
+@Value
+@Builder
+public class SyntheticMonorepo {
+
+    public static final String GROUP_ID = "bench.mono";
+    public static final String VERSION = "1.0.0";
+    public static final String TAG_PREFIX = "last-successful-build-";
+
+    @Builder.Default
+    int modules = 100;
+    // 1 puts every module at the top level, each further level adds a layer of aggregators
+    @Builder.Default
+    int nestingDepth = 2;
+    @Builder.Default
+    int dependencyFanOut = 3;
+    @Builder.Default
+    int historyLength = 50;
+    @Builder.Default
+    int tagCount = 10;
+    @Builder.Default
+    int changesPerCommit = 3;
+    @Builder.Default
+    long seed = 42;
+
+    public File generate(File root) throws Exception {
+        Random random = new Random(seed);
+        Map<String, List<String>> aggregators = new LinkedHashMap<>();
+        aggregators.put("", new ArrayList<>());
+        List<String> leafDirectories = new ArrayList<>();
+
+        for (int i = 0; i < modules; i++) {
+            String parent = "";
+            for (int level = 1; level < nestingDepth; level++) {
+                String group = parent + (parent.isEmpty() ? "" : "/") + "group-" + groupIndex(i, level);
+                if (!aggregators.containsKey(group)) {
+                    aggregators.put(group, new ArrayList<>());
+                    aggregators.get(parent).add(group.substring(parent.isEmpty() ? 0 : parent.length() + 1));
+                }
+                parent = group;
+            }
+            String directory = parent + (parent.isEmpty() ? "" : "/") + moduleName(i);
+            aggregators.get(parent).add(moduleName(i));
+            leafDirectories.add(directory);
+
+            List<String> dependencies = new ArrayList<>();
+            for (int d = 0; d < Math.min(dependencyFanOut, i); d++) {
+                dependencies.add(moduleName(random.nextInt(i)));
+            }
+            write(root, directory + "/pom.xml", leafPom(i, parentArtifactId(parent), dependencies));
+            write(root, directory + "/src/main/java/bench/Module" + i + ".java", source(i, 0));
+            write(root, directory + "/src/test/java/bench/Module" + i + "Test.java",
+                    "package bench;\n\npublic class Module" + i + "Test {\n}\n");
+        }
+        for (var aggregator : aggregators.entrySet()) {
+            String directory = aggregator.getKey();
+            String parent = directory.contains("/") ? directory.substring(0, directory.lastIndexOf('/')) : "";
+            write(root, (directory.isEmpty() ? "" : directory + "/") + "pom.xml",
+                    aggregatorPom(directory, directory.isEmpty() ? null : parentArtifactId(parent), aggregator.getValue()));
+        }
+        write(root, "README.md", "# synthetic monorepo\n");
+
+        try (Git git = Git.init().setDirectory(root).setInitialBranch("main").call()) {
+            Instant time = Instant.parse("2024-01-01T00:00:00Z");
+            git.add().addFilepattern(".").call();
+            RevCommit commit = commit(git, "initial", time);
+            int tagsPlaced = 0;
+            for (int c = 1; c <= historyLength; c++) {
+                for (int m = 0; m < changesPerCommit; m++) {
+                    int module = random.nextInt(modules);
+                    String path = leafDirectories.get(module) + "/src/main/java/bench/Module" + module + ".java";
+                    write(root, path, source(module, c));
+                    git.add().addFilepattern(path).call();
+                }
+                commit = commit(git, "change " + c, time.plusSeconds(60L * c));
+                // leave the last tenth of the history untagged so there is something to detect
+                int tagsDue = (int) ((long) tagCount * c / Math.max(1, historyLength * 9 / 10));
+                while (tagsPlaced < Math.min(tagsDue, tagCount)) {
+                    git.tag().setName(TAG_PREFIX + tagsPlaced++).setObjectId(commit).setAnnotated(false).call();
+                }
+            }
+            while (tagsPlaced < tagCount) {
+                git.tag().setName(TAG_PREFIX + tagsPlaced++).setObjectId(commit).setAnnotated(false).call();
+            }
+        }
+        return root;
+    }
+
+    public static String moduleName(int index) {
+        return "module-" + index;
+    }
+
+    private int groupIndex(int module, int level) {
+        // ten groups per level, so nestingDepth 3 gives 10 top-level and 100 second-level aggregators
+        int divisor = 1;
+        for (int l = 1; l < level; l++) {
+            divisor *= 10;
+        }
+        return (module / divisor) % 10;
+    }
+
+    private static String parentArtifactId(String aggregatorDirectory) {
+        return aggregatorDirectory.isEmpty() ? "root" : aggregatorDirectory.replace('/', '-');
+    }
+
+    private static RevCommit commit(Git git, String message, Instant time) throws Exception {
+        var author = new PersonIdent("bench", "bench@example.com", java.util.Date.from(time), TimeZone.getTimeZone("UTC"));
+        return git.commit().setMessage(message).setAuthor(author).setCommitter(author).setSign(false).call();
+    }
+
+    private static String leafPom(int index, String parent, List<String> dependencies) {
+        StringBuilder pom = new StringBuilder();
+        pom.append("<project>\n")
+                .append("    <modelVersion>4.0.0</modelVersion>\n")
+                .append(parentBlock(parent))
+                .append("    <artifactId>").append(moduleName(index)).append("</artifactId>\n")
+                .append("    <version>").append(VERSION).append("</version>\n")
+                .append("    <packaging>jar</packaging>\n")
+                .append("    <dependencies>\n");
+        for (String dependency : dependencies.stream().distinct().toList()) {
+            pom.append("        <dependency>\n")
+                    .append("            <groupId>").append(GROUP_ID).append("</groupId>\n")
+                    .append("            <artifactId>").append(dependency).append("</artifactId>\n")
+                    .append("            <version>").append(VERSION).append("</version>\n")
+                    .append("        </dependency>\n");
+        }
+        return pom.append("    </dependencies>\n").append("</project>\n").toString();
+    }
+
+    private static String aggregatorPom(String directory, String parent, List<String> children) {
+        StringBuilder pom = new StringBuilder();
+        pom.append("<project>\n")
+                .append("    <modelVersion>4.0.0</modelVersion>\n");
+        if (parent != null) {
+            pom.append(parentBlock(parent));
+        } else {
+            pom.append("    <groupId>").append(GROUP_ID).append("</groupId>\n");
+        }
+        pom.append("    <artifactId>").append(parentArtifactId(directory)).append("</artifactId>\n")
+                .append("    <version>").append(VERSION).append("</version>\n")
+                .append("    <packaging>pom</packaging>\n")
+                .append("    <modules>\n");
+        for (String child : children) {
+            pom.append("        <module>").append(child).append("</module>\n");
+        }
+        return pom.append("    </modules>\n").append("</project>\n").toString();
+    }
+
+    private static String parentBlock(String parent) {
+        return "    <parent>\n"
+                + "        <groupId>" + GROUP_ID + "</groupId>\n"
+                + "        <artifactId>" + parent + "</artifactId>\n"
+                + "        <version>" + VERSION + "</version>\n"
+                + "    </parent>\n";
+    }
+
+    private static String source(int module, int revision) {
+        return "package bench;\n\npublic class Module" + module + " {\n    static final int REVISION = " + revision + ";\n}\n";
+    }
+
+    private static void write(File root, String path, String content) throws IOException {
+        Path file = root.toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}
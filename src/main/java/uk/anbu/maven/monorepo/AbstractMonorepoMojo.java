@@ -0,0 +1,455 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public abstract class AbstractMonorepoMojo extends AbstractMojo {
+
+    @Parameter(property = "project", readonly = true)
+    protected MavenProject project;
+
+    @Parameter(defaultValue = "${project.basedir}", readonly = true)
+    protected File basedir;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    protected MavenSession session;
+
+    /**
+     * Globs, relative to the repository root, for files outside every module that mark all modules as changed,
+     * for example the root pom.xml. Other files outside modules are ignored.
+     */
+    @Parameter(property = "monorepo.outsideModuleTriggers")
+    protected List<String> outsideModuleTriggers = List.of();
+
+    /**
+     * How to update refs before looking for changes: FULL, NONE (offline), TAGS_ONLY (only
+     * last-successful-build-* tags) or SHALLOW (depth-limited fetch). A shallow history that ends before the
+     * last build tag is deepened by doubling monorepo.fetchDepth up to three times, then the build fails.
+     */
+    @Parameter(property = "monorepo.fetchMode", defaultValue = "FULL")
+    protected FetchMode fetchMode = FetchMode.FULL;
+
+    @Parameter(property = "monorepo.fetchDepth", defaultValue = "50")
+    protected int fetchDepth = 50;
+
+    @Parameter(property = "monorepo.cacheBaseline", defaultValue = "true")
+    protected boolean cacheBaseline = true;
+
+    /**
+     * Globs for directories never entered when an aggregator that declares no modules has its directory
+     * searched for POMs. Matched against the directory name and its path relative to the repository root.
+     */
+    @Parameter(property = "monorepo.discoveryIgnores", defaultValue = "target,node_modules,.*")
+    protected List<String> discoveryIgnores = ModuleDiscovery.DEFAULT_IGNORES;
+
+    /**
+     * Classify the changes of every module as POM, MAIN, RESOURCES, TEST, DOCS or OTHER. Modules with only
+     * TEST and DOCS changes are rebuilt without their dependents and are not re-versioned.
+     */
+    @Parameter(property = "monorepo.classifyChanges", defaultValue = "true")
+    protected boolean classifyChanges = true;
+
+    // KIND=glob rules relative to the module directory, checked before ChangeClassifier.DEFAULT_RULES
+    @Parameter(property = "monorepo.changeKindRules")
+    protected List<String> changeKindRules = List.of();
+
+    @Parameter(property = "monorepo.useGraphIndex", defaultValue = "true")
+    protected boolean useGraphIndex = true;
+
+    /**
+     * Build the dependency graph from the projects already loaded by the reactor instead of reading the POMs
+     * again. Falls back to reading them when the reactor does not hold every declared module, e.g. with -N.
+     */
+    @Parameter(property = "monorepo.useReactorProjects", defaultValue = "true")
+    protected boolean useReactorProjects = true;
+
+    /**
+     * Leave out modules whose fingerprint was recorded for an artifact that is still in the local repository,
+     * see {@link FingerprintRecorder}.
+     */
+    @Parameter(property = "monorepo.skipInstalled", defaultValue = "true")
+    protected boolean skipInstalled = true;
+
+    /**
+     * Run change detection (fetch, baseline lookup, diff) and the dependency graph build concurrently instead of
+     * one after the other.
+     */
+    @Parameter(property = "monorepo.parallelAnalysis", defaultValue = "true")
+    protected boolean parallelAnalysis = true;
+
+    // Seconds the change analysis may take before the goal fails, 0 waits indefinitely
+    @Parameter(property = "monorepo.analysisTimeout", defaultValue = "0")
+    protected int analysisTimeout;
+
+    /**
+     * Read every pom.xml from the HEAD commit instead of the working tree. Works on blob-filtered clones, where
+     * only the pom.xml blobs are fetched.
+     */
+    @Parameter(property = "monorepo.readFromGit", defaultValue = "false")
+    protected boolean readFromGit;
+
+    /**
+     * Analyze this repository, which may be bare, instead of the one holding the project. Implies
+     * {@code readFromGit}; goals that only plan the build then run without a project, e.g.
+     * {@code mvn monorepo-build:build-plan -Dmonorepo.gitDir=repo.git}.
+     */
+    @Parameter(property = "monorepo.gitDir")
+    protected File gitDir;
+
+    /**
+     * Analyze the changes once per build: goals and executions of the same session that analyze the same
+     * repository with the same options reuse the first one's result, also when they run concurrently with -T.
+     */
+    @Parameter(property = "monorepo.shareAnalysis", defaultValue = "true")
+    protected boolean shareAnalysis = true;
+
+    /**
+     * The changed modules, null when there is no baseline, the kinds of their changes, those of them whose
+     * artifact is unchanged, and the graph, null when nothing changed.
+     */
+    protected record ChangeAnalysis(List<String> changedModules, Map<String, Set<ChangeKind>> changeKinds,
+                                    Set<String> artifactUnchanged, DependencyUpdateAnalyzer analyzer) {
+
+        public boolean hasChanges() {
+            return changedModules != null && !changedModules.isEmpty();
+        }
+
+        // The changed modules whose changes reach their dependents
+        public List<String> propagatingChanges() {
+            return changedModules.stream().filter(module -> !artifactUnchanged.contains(module)).toList();
+        }
+
+        // Modules to rebuild: those changed, and the dependents of those whose artifact changed
+        public Set<Module> affectedModules(RunReport runReport) {
+            return runReport.time("affected-set",
+                    () -> analyzer.findModulesToUpdate(changedModules, artifactUnchanged));
+        }
+
+        static ChangeAnalysis withoutGraph(GitHelper gitHelper, List<String> changedModules) {
+            return new ChangeAnalysis(changedModules, gitHelper.getChangeKinds(), Set.of(), null);
+        }
+
+        static ChangeAnalysis withGraph(GitHelper gitHelper, List<String> changedModules,
+                                        DependencyUpdateAnalyzer analyzer) {
+            List<String> changed = gitHelper.withModulesBehindDependencies(changedModules, analyzer);
+            return new ChangeAnalysis(changed, gitHelper.getChangeKinds(), gitHelper.findArtifactUnchangedModules(),
+                    analyzer);
+        }
+    }
+
+    // Session data key prefix of the changes the reactor pruning found, followed by their AnalysisKey
+    private static final String PRUNER_CHANGES = "monorepo-build.pruner-changes:";
+
+    // Everything the outcome of a change analysis depends on, the key it is shared under in a build
+    record AnalysisKey(File repositoryRoot, ChangeDetectionOptions options, List<String> discoveryIgnores,
+                       boolean useGraphIndex) {
+    }
+
+    // The same settings ReactorPruner resolves for the plugin, see AnalysisSettings.resolve
+    protected AnalysisSettings analysisSettings() {
+        return AnalysisSettings.builder()
+                .outsideModuleTriggers(outsideModuleTriggers)
+                .fetchMode(fetchMode)
+                .fetchDepth(fetchDepth)
+                .cacheBaseline(cacheBaseline)
+                .readFromGit(readFromGit || gitDir != null)
+                .classifyChanges(classifyChanges)
+                .changeKindRules(changeKindRules)
+                .discoveryIgnores(discoveryIgnores)
+                .useGraphIndex(useGraphIndex)
+                .build();
+    }
+
+    protected ChangeDetectionOptions changeDetectionOptions() {
+        return analysisSettings().changeDetectionOptions();
+    }
+
+    // The root of the analyzed repository, the git directory itself for a bare one
+    protected File repositoryRoot() {
+        return gitDir != null ? gitDir : basedir;
+    }
+
+    protected GitHelper newGitHelper(ModelCache modelCache, RunReport runReport) {
+        GitHelper gitHelper = new GitHelper(getLog(), repositoryRoot(), changeDetectionOptions(), modelCache, runReport);
+        reactorProjects().ifPresent(projects -> gitHelper.setModuleTrie(ModuleTrie.fromProjects(basedir, projects)));
+        return gitHelper;
+    }
+
+    protected Set<Module> skipInstalled(Set<Module> modules, GitHelper gitHelper, DependencyUpdateAnalyzer analyzer,
+                                        RunReport runReport) {
+        if (!skipInstalled || session == null || modules.isEmpty()) {
+            return modules;
+        }
+        File localRepository = session.getRequest().getLocalRepositoryPath();
+        Set<Module> remaining = runReport.time("fingerprints",
+                () -> ModuleFingerprints.skipInstalled(modules, gitHelper, analyzer, localRepository, getLog()));
+        runReport.increment("modules-skipped", modules.size() - remaining.size());
+        return remaining;
+    }
+
+    // Every project of the reactor, if it holds all modules declared below this one
+    protected Optional<List<MavenProject>> reactorProjects() {
+        if (!useReactorProjects || readFromGit || gitDir != null || session == null
+                || session.getAllProjects() == null) {
+            return Optional.empty();
+        }
+        List<MavenProject> projects = session.getAllProjects();
+        Map<Path, MavenProject> byPom = new HashMap<>();
+        projects.forEach(reactorProject ->
+                byPom.put(reactorProject.getFile().getAbsoluteFile().toPath().normalize(), reactorProject));
+        Deque<Path> declared = new ArrayDeque<>();
+        declared.add(project.getFile().getAbsoluteFile().toPath().normalize());
+        while (!declared.isEmpty()) {
+            MavenProject declaring = byPom.get(declared.poll());
+            if (declaring == null) {
+                getLog().debug("Reactor does not hold every declared module, reading POMs from disk");
+                return Optional.empty();
+            }
+            for (String module : declaring.getModules()) {
+                Path modulePath = declaring.getBasedir().toPath().resolve(module).normalize();
+                declared.add(Files.isDirectory(modulePath) ? modulePath.resolve("pom.xml") : modulePath);
+            }
+        }
+        return Optional.of(projects);
+    }
+
+    // target/ of the project, or of the current directory for goals running without a project
+    protected File buildDirectory() {
+        return project.getFile() != null
+                ? new File(project.getBuild().getDirectory())
+                : new File(System.getProperty("user.dir"), "target");
+    }
+
+    // Writes the run report to target/ and appends it to the history kept next to the other plugin state
+    protected void writeRunReport(String goal, RunReport runReport, GitHelper gitHelper) {
+        File reportFile = new File(buildDirectory(), "monorepo-build/run-report.json");
+        File historyFile = new File(gitHelper.getStateDirectory(), "run-history.jsonl");
+        runReport.write(goal, reportFile, historyFile);
+        getLog().info("Run report written to " + reportFile);
+    }
+
+    /**
+     * Finds the changed modules and builds the dependency graph, or returns the analysis an earlier goal of this
+     * build made of the same repository. The first caller analyzes while concurrent ones wait for its result.
+     * Changes the reactor pruning found are taken over, so only the graph is built.
+     */
+    @SuppressWarnings("unchecked")
+    protected ChangeAnalysis analyzeChanges(GitHelper gitHelper, ModelCache modelCache, RunReport runReport) {
+        Callable<ChangeAnalysis> analysis = () -> prunerChanges()
+                .map(changes -> changes.hasChanges()
+                        ? new ChangeAnalysis(changes.changedModules(), changes.changeKinds(),
+                        changes.artifactUnchanged(), buildDependencyGraph(gitHelper, modelCache, runReport))
+                        : changes)
+                .orElseGet(() -> analyze(gitHelper, modelCache, runReport));
+        FutureTask<ChangeAnalysis> created = new FutureTask<>(analysis);
+        if (!shareAnalysis || session == null || session.getRepositorySession() == null) {
+            created.run();
+            return await(created);
+        }
+        // only the cheap task is created under the session data's lock, the analysis runs outside of it
+        var task = (FutureTask<ChangeAnalysis>) session.getRepositorySession().getData()
+                .computeIfAbsent(analysisKey(), () -> created);
+        if (task != created) {
+            getLog().info("Reusing the change analysis of an earlier goal in this build");
+            runReport.increment("analyses-reused", 1);
+        }
+        task.run();
+        return await(task);
+    }
+
+    // The analysis another goal or the reactor pruning of this build already made, without starting one
+    protected Optional<ChangeAnalysis> sharedAnalysis() {
+        if (!shareAnalysis || session == null || session.getRepositorySession() == null) {
+            return Optional.empty();
+        }
+        var task = (FutureTask<?>) session.getRepositorySession().getData().get(analysisKey());
+        if (task == null) {
+            return prunerChanges();
+        }
+        getLog().info("Reusing the change analysis of an earlier goal in this build");
+        task.run();
+        return Optional.of((ChangeAnalysis) await(task));
+    }
+
+    private AnalysisKey analysisKey() {
+        return analysisSettings().analysisKey(repositoryRoot());
+    }
+
+    /**
+     * Leaves the changes the reactor pruning found for the goals of the build. The pruner and the goals load
+     * this class in different class realms, so only JDK types are exchanged: each changed module in order, with
+     * the names of its change kinds.
+     */
+    static void publishChanges(MavenSession session, AnalysisKey key, ChangeAnalysis analysis) {
+        if (session.getRepositorySession() == null || analysis.changedModules() == null) {
+            return;
+        }
+        Map<String, List<String>> changes = new LinkedHashMap<>();
+        for (String module : analysis.changedModules()) {
+            changes.put(module, analysis.changeKinds().getOrDefault(module, Set.of()).stream()
+                    .map(ChangeKind::name).sorted().toList());
+        }
+        session.getRepositorySession().getData().set(PRUNER_CHANGES + key, Collections.unmodifiableMap(changes));
+    }
+
+    // The changes the reactor pruning found with the same options, without the graph
+    @SuppressWarnings("unchecked")
+    private Optional<ChangeAnalysis> prunerChanges() {
+        if (!shareAnalysis || session == null || session.getRepositorySession() == null
+                || !(session.getRepositorySession().getData().get(PRUNER_CHANGES + analysisKey())
+                instanceof Map<?, ?> published)) {
+            return Optional.empty();
+        }
+        getLog().info("Reusing the changes found when the reactor was pruned");
+        var changes = (Map<String, List<String>>) published;
+        Map<String, Set<ChangeKind>> changeKinds = new LinkedHashMap<>();
+        Set<String> artifactUnchanged = new LinkedHashSet<>();
+        changes.forEach((module, names) -> {
+            if (names.isEmpty()) {
+                // changes are not classified
+                return;
+            }
+            Set<ChangeKind> kinds = EnumSet.noneOf(ChangeKind.class);
+            names.forEach(name -> kinds.add(ChangeKind.valueOf(name)));
+            changeKinds.put(module, kinds);
+            if (kinds.stream().noneMatch(ChangeKind::affectsArtifact)) {
+                artifactUnchanged.add(module);
+            }
+        });
+        return Optional.of(new ChangeAnalysis(List.copyOf(changes.keySet()), changeKinds, artifactUnchanged, null));
+    }
+
+    /**
+     * The change detection and the graph build only meet when the affected set is computed, so by default they
+     * run on two threads and the graph build is cancelled if nothing changed.
+     */
+    @SneakyThrows
+    private ChangeAnalysis analyze(GitHelper gitHelper, ModelCache modelCache, RunReport runReport) {
+        if (!parallelAnalysis) {
+            List<String> changedModules = gitHelper.changedModuleList();
+            if (changedModules == null || changedModules.isEmpty() && !gitHelper.hasHiddenChanges()) {
+                return ChangeAnalysis.withoutGraph(gitHelper, changedModules);
+            }
+            return ChangeAnalysis.withGraph(gitHelper, changedModules,
+                    buildDependencyGraph(gitHelper, modelCache, runReport));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(analysisTimeout);
+        ExecutorService executor = Executors.newFixedThreadPool(2, task -> {
+            Thread thread = new Thread(task, "monorepo-build-analysis");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<List<String>> changes = executor.submit(gitHelper::changedModuleList);
+            Future<DependencyUpdateAnalyzer> graph = executor.submit(
+                    () -> buildDependencyGraph(gitHelper, modelCache, runReport));
+            List<String> changedModules = await(changes, deadline);
+            if (changedModules == null || changedModules.isEmpty() && !gitHelper.hasHiddenChanges()) {
+                graph.cancel(true);
+                return ChangeAnalysis.withoutGraph(gitHelper, changedModules);
+            }
+            return ChangeAnalysis.withGraph(gitHelper, changedModules, await(graph, deadline));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SneakyThrows
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @SneakyThrows
+    private <T> T await(Future<T> future, long deadline) {
+        try {
+            return analysisTimeout <= 0
+                    ? future.get()
+                    : future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new MojoExecutionException("Change analysis did not finish within " + analysisTimeout + " seconds");
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Builds the graph, refreshing and saving the graph index under the state directory when it is enabled
+    protected DependencyUpdateAnalyzer buildDependencyGraph(GitHelper gitHelper, ModelCache modelCache,
+                                                            RunReport runReport) {
+        DependencyUpdateAnalyzer analyzer = new DependencyUpdateAnalyzer(modelCache, getLog(), runReport);
+        analyzer.setModuleDiscovery(new ModuleDiscovery(discoveryIgnores));
+        if (changeDetectionOptions().isReadFromGit()) {
+            getLog().info("Building dependency graph from the pom.xml files at HEAD");
+            analyzer.buildDependencyGraph(gitHelper.headPomModels());
+            return analyzer;
+        }
+        Optional<List<MavenProject>> reactorProjects = reactorProjects();
+        if (reactorProjects.isPresent()) {
+            getLog().info("Building dependency graph from " + reactorProjects.get().size() + " reactor projects");
+            analyzer.buildDependencyGraph(basedir, reactorProjects.get());
+            return analyzer;
+        }
+
+        String rootPom = new File(basedir, "pom.xml").getAbsolutePath();
+        if (!useGraphIndex) {
+            analyzer.buildDependencyGraph(rootPom);
+            return analyzer;
+        }
+
+        File indexFile = new File(gitHelper.getStateDirectory(), "graph.idx");
+        var index = runReport.time("index-load", () -> DependencyGraphIndex.load(indexFile));
+        List<String> changedPoms = runReport.time("index-diff", () -> index.map(DependencyGraphIndex::commitId)
+                .map(gitHelper::changedPomPaths)
+                .orElse(null));
+        if (changedPoms == null) {
+            getLog().info("Building dependency graph from scratch");
+            analyzer.buildDependencyGraph(rootPom);
+        } else {
+            getLog().info(String.format("Refreshing dependency graph index, %d pom.xml files changed since %s",
+                    changedPoms.size(), index.get().commitId()));
+            analyzer.buildDependencyGraph(rootPom, index.get().entries(), changedPoms);
+        }
+
+        String headCommitId = gitHelper.headCommitId();
+        // a cancelled build may not have seen every POM it would have parsed
+        if (headCommitId != null && !Thread.currentThread().isInterrupted()) {
+            runReport.time("index-save", () -> {
+                new DependencyGraphIndex(headCommitId, analyzer.getPomEntries()).save(indexFile);
+                return null;
+            });
+        }
+        return analyzer;
+    }
+}
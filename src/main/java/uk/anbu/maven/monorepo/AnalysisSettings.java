@@ -0,0 +1,150 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.Builder;
+import lombok.SneakyThrows;
+import lombok.Value;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The parameters a change analysis depends on. The goals fill it from their injected parameters and the reactor
+ * pruning resolves the same parameters itself, so both derive equal {@link ChangeDetectionOptions} and
+ * {@link AbstractMonorepoMojo.AnalysisKey}s from it.
+ */
+@Value
+@Builder
+public class AnalysisSettings {
+    private static final String PLUGIN_KEY = "uk.anbu.maven.monorepo:monorepo-build";
+
+    @Builder.Default
+    List<String> outsideModuleTriggers = List.of();
+
+    @Builder.Default
+    FetchMode fetchMode = FetchMode.FULL;
+
+    @Builder.Default
+    int fetchDepth = 50;
+
+    @Builder.Default
+    boolean cacheBaseline = true;
+
+    @Builder.Default
+    boolean readFromGit = false;
+
+    @Builder.Default
+    boolean classifyChanges = true;
+
+    @Builder.Default
+    List<String> changeKindRules = List.of();
+
+    @Builder.Default
+    List<String> discoveryIgnores = ModuleDiscovery.DEFAULT_IGNORES;
+
+    @Builder.Default
+    boolean useGraphIndex = true;
+
+    public ChangeDetectionOptions changeDetectionOptions() {
+        return ChangeDetectionOptions.builder()
+                .outsideModuleTriggers(List.copyOf(outsideModuleTriggers))
+                .fetchMode(fetchMode)
+                .fetchDepth(fetchDepth)
+                .cacheBaseline(cacheBaseline)
+                .readFromGit(readFromGit)
+                .classifyChanges(classifyChanges)
+                .changeKindRules(List.copyOf(changeKindRules))
+                .build();
+    }
+
+    @SneakyThrows
+    AbstractMonorepoMojo.AnalysisKey analysisKey(File repositoryRoot) {
+        return new AbstractMonorepoMojo.AnalysisKey(repositoryRoot.getCanonicalFile(), changeDetectionOptions(),
+                List.copyOf(discoveryIgnores), useGraphIndex);
+    }
+
+    // The settings a goal of the plugin is configured with, given how its parameters are looked up
+    static AnalysisSettings resolve(Parameters parameters) {
+        return AnalysisSettings.builder()
+                .outsideModuleTriggers(parameters.list("outsideModuleTriggers", "monorepo.outsideModuleTriggers",
+                        List.of()))
+                .fetchMode(FetchMode.valueOf(parameters.value("fetchMode", "monorepo.fetchMode",
+                        FetchMode.FULL.name())))
+                .fetchDepth(Integer.parseInt(parameters.value("fetchDepth", "monorepo.fetchDepth", "50")))
+                .cacheBaseline(parameters.flag("cacheBaseline", "monorepo.cacheBaseline", true))
+                .readFromGit(parameters.flag("readFromGit", "monorepo.readFromGit", false)
+                        || parameters.value("gitDir", "monorepo.gitDir", null) != null)
+                .classifyChanges(parameters.flag("classifyChanges", "monorepo.classifyChanges", true))
+                .changeKindRules(parameters.list("changeKindRules", "monorepo.changeKindRules", List.of()))
+                .discoveryIgnores(parameters.list("discoveryIgnores", "monorepo.discoveryIgnores",
+                        ModuleDiscovery.DEFAULT_IGNORES))
+                .useGraphIndex(parameters.flag("useGraphIndex", "monorepo.useGraphIndex", true))
+                .build();
+    }
+
+    /**
+     * Looks mojo parameters up the way Maven configures them: the plugin's {@code <configuration>} first, then
+     * -D and system properties, then the {@code <properties>} of the project. Configuration given only to an
+     * execution is not seen.
+     */
+    static class Parameters {
+        private final Xpp3Dom configuration;
+        private final Properties properties;
+        private final Properties projectProperties;
+
+        Parameters(Xpp3Dom configuration, Properties properties, Properties projectProperties) {
+            this.configuration = configuration;
+            this.properties = properties;
+            this.projectProperties = projectProperties;
+        }
+
+        static Parameters of(MavenSession session) {
+            Properties properties = new Properties();
+            properties.putAll(session.getSystemProperties());
+            properties.putAll(session.getUserProperties());
+            MavenProject project = session.getTopLevelProject();
+            if (project == null) {
+                return new Parameters(null, properties, new Properties());
+            }
+            Plugin plugin = project.getBuild() == null ? null : project.getBuild().getPluginsAsMap().get(PLUGIN_KEY);
+            Xpp3Dom configuration = plugin == null ? null : (Xpp3Dom) plugin.getConfiguration();
+            return new Parameters(configuration, properties, project.getProperties());
+        }
+
+        String value(String name, String property, String defaultValue) {
+            Xpp3Dom child = configuration == null ? null : configuration.getChild(name);
+            if (child != null && child.getValue() != null) {
+                return child.getValue().trim();
+            }
+            return property(property, defaultValue);
+        }
+
+        // A property that is not a mojo parameter, e.g. monorepo.prune
+        String property(String property, String defaultValue) {
+            String value = properties.getProperty(property, projectProperties.getProperty(property));
+            return value == null ? defaultValue : value;
+        }
+
+        boolean flag(String name, String property, boolean defaultValue) {
+            return Boolean.parseBoolean(value(name, property, String.valueOf(defaultValue)));
+        }
+
+        // Lists are configured as nested elements or, like -D values, separated by commas
+        List<String> list(String name, String property, List<String> defaultValue) {
+            Xpp3Dom child = configuration == null ? null : configuration.getChild(name);
+            if (child != null && child.getChildCount() > 0) {
+                return Arrays.stream(child.getChildren()).map(Xpp3Dom::getValue)
+                        .filter(value -> value != null && !value.isBlank()).map(String::trim).toList();
+            }
+            String value = value(name, property, null);
+            return value == null
+                    ? defaultValue
+                    : Arrays.stream(value.split(",")).map(String::trim).filter(item -> !item.isEmpty()).toList();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Finds the most recent ancestor of HEAD carrying a build tag. Only refs under the tag prefix are listed and
+ * the walk stops at the first tagged commit, so the cost depends on the distance to the last successful
+ * build rather than on the number of tags. RevWalk reads the commit-graph file when core.commitGraph is
+ * enabled, which avoids inflating commit objects along the way.
+ */
+public class BaselineLocator {
+
+    private static final String CACHE_FILE = "baseline";
+
+    private record CacheEntry(String head, String refsSnapshot, String tagsFingerprint, ObjectId baseline) {
+    }
+
+    private final Log log;
+    private final Repository repository;
+    private final String tagPrefix;
+    private final File cacheFile;
+    private int tagsScanned;
+
+    public BaselineLocator(Log log, Repository repository, String tagPrefix, File stateDirectory) {
+        this.log = log;
+        this.repository = repository;
+        this.tagPrefix = tagPrefix;
+        this.cacheFile = stateDirectory == null ? null : new File(stateDirectory, CACHE_FILE);
+    }
+
+    /**
+     * The cache is checked first, against HEAD and a snapshot of the files the tag refs are stored in, so an
+     * unchanged repository lists and peels no tags. When the snapshot differs, e.g. after a fetch, the cached
+     * baseline is still used if HEAD and the tags themselves are unchanged.
+     */
+    public Optional<ObjectId> findBaseline(ObjectId head) throws IOException {
+        tagsScanned = 0;
+        if (head == null) {
+            return Optional.empty();
+        }
+        String refsSnapshot = cacheFile == null ? null : refsSnapshot();
+        Optional<CacheEntry> entry = readCache().filter(cached -> cached.head().equals(head.getName()));
+        if (entry.isPresent() && entry.get().refsSnapshot().equals(refsSnapshot)) {
+            log.info("Using cached baseline for HEAD " + head.getName());
+            return Optional.of(entry.get().baseline());
+        }
+
+        List<Ref> tags = repository.getRefDatabase().getRefsByPrefix("refs/tags/" + tagPrefix);
+        tagsScanned = tags.size();
+        log.info("Found " + tags.size() + " tags with prefix '" + tagPrefix + "'");
+        if (tags.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Map<ObjectId, String> taggedCommits = new HashMap<>();
+        Map<String, ObjectId> tagCommits = new TreeMap<>();
+        for (Ref tag : tags) {
+            log.debug(String.format("Found tag %s", tag.getName()));
+            Ref peeled = repository.getRefDatabase().peel(tag);
+            ObjectId commitId = peeled.getPeeledObjectId() != null ? peeled.getPeeledObjectId() : peeled.getObjectId();
+            taggedCommits.putIfAbsent(commitId, tag.getName());
+            tagCommits.put(tag.getName(), commitId);
+        }
+        String tagsFingerprint = fingerprint(tagCommits);
+
+        if (entry.isPresent() && entry.get().tagsFingerprint().equals(tagsFingerprint)) {
+            log.info("Using cached baseline for HEAD " + head.getName() + ", the build tags are unchanged");
+            writeCache(new CacheEntry(head.getName(), refsSnapshot, tagsFingerprint, entry.get().baseline()));
+            return Optional.of(entry.get().baseline());
+        }
+
+        Optional<ObjectId> baseline = walkToNearestTaggedAncestor(head, taggedCommits);
+        baseline.ifPresent(commit -> writeCache(new CacheEntry(head.getName(), refsSnapshot, tagsFingerprint, commit)));
+        return baseline;
+    }
+
+    public int getTagsScanned() {
+        return tagsScanned;
+    }
+
+    private Optional<ObjectId> walkToNearestTaggedAncestor(ObjectId head, Map<ObjectId, String> taggedCommits)
+            throws IOException {
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.setRetainBody(false);
+            walk.sort(RevSort.COMMIT_TIME_DESC);
+            walk.markStart(walk.parseCommit(head));
+            int visited = 0;
+            for (RevCommit commit : walk) {
+                visited++;
+                String tag = taggedCommits.get(commit);
+                if (tag != null) {
+                    log.info(String.format("Nearest tagged ancestor %s (%s) found after %d commits",
+                            commit.getName(), tag, visited));
+                    return Optional.of(commit.copy());
+                }
+            }
+            log.warn(String.format("None of the %d build tags is an ancestor of HEAD", taggedCommits.size()));
+            return Optional.empty();
+        }
+    }
+
+    // SHA-1 over the sorted tag names and the commits they point at
+    private static String fingerprint(Map<String, ObjectId> tagCommits) {
+        MessageDigest digest = Constants.newMessageDigest();
+        tagCommits.forEach((name, commitId) -> {
+            digest.update(name.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(commitId.getName().getBytes(StandardCharsets.US_ASCII));
+            digest.update((byte) '\n');
+        });
+        return ObjectId.fromRaw(digest.digest()).getName();
+    }
+
+    /**
+     * Size and modification time of packed-refs, of the reftable stack, and of every loose ref under the tag
+     * prefix. Any change to a build tag rewrites one of them, and nothing is parsed to take the snapshot.
+     */
+    private String refsSnapshot() throws IOException {
+        File refsDirectory = commonDirectory();
+        StringBuilder snapshot = new StringBuilder();
+        appendFile(snapshot, new File(refsDirectory, "packed-refs"));
+        appendFile(snapshot, new File(refsDirectory, "reftable/tables.list"));
+        int slash = tagPrefix.lastIndexOf('/');
+        File looseDirectory = new File(refsDirectory, "refs/tags/" + tagPrefix.substring(0, slash + 1));
+        String namePrefix = tagPrefix.substring(slash + 1);
+        File[] looseRefs = looseDirectory.listFiles((directory, name) -> name.startsWith(namePrefix));
+        if (looseRefs != null) {
+            Arrays.sort(looseRefs);
+            for (File looseRef : looseRefs) {
+                appendFile(snapshot, looseRef);
+            }
+        }
+        MessageDigest digest = Constants.newMessageDigest();
+        digest.update(snapshot.toString().getBytes(StandardCharsets.UTF_8));
+        return ObjectId.fromRaw(digest.digest()).getName();
+    }
+
+    private static void appendFile(StringBuilder snapshot, File file) throws IOException {
+        snapshot.append(file.getName());
+        if (file.isFile()) {
+            snapshot.append(' ').append(file.length())
+                    .append(' ').append(Files.getLastModifiedTime(file.toPath()).toInstant());
+        }
+        snapshot.append('\n');
+    }
+
+    // Linked worktrees keep their refs in the directory of the main repository
+    private File commonDirectory() throws IOException {
+        File gitDirectory = repository.getDirectory();
+        File commonDir = new File(gitDirectory, "commondir");
+        if (!commonDir.isFile()) {
+            return gitDirectory;
+        }
+        return new File(gitDirectory, Files.readString(commonDir.toPath(), StandardCharsets.UTF_8).trim())
+                .getCanonicalFile();
+    }
+
+    private Optional<CacheEntry> readCache() {
+        if (cacheFile == null || !cacheFile.isFile()) {
+            return Optional.empty();
+        }
+        try {
+            List<String> lines = Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8);
+            if (lines.size() == 4 && ObjectId.isId(lines.get(3))) {
+                return Optional.of(new CacheEntry(lines.get(0), lines.get(1), lines.get(2),
+                        ObjectId.fromString(lines.get(3))));
+            }
+        } catch (IOException e) {
+            log.debug("Ignoring unreadable baseline cache " + cacheFile, e);
+        }
+        return Optional.empty();
+    }
+
+    private void writeCache(CacheEntry entry) {
+        if (cacheFile == null) {
+            return;
+        }
+        try {
+            cacheFile.getParentFile().mkdirs();
+            Files.write(cacheFile.toPath(), List.of(entry.head(), entry.refsSnapshot(), entry.tagsFingerprint(),
+                    entry.baseline().getName()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("Could not write baseline cache " + cacheFile + ": " + e.getMessage());
+        }
+    }
+}
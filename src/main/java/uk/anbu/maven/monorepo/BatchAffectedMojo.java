@@ -0,0 +1,115 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static uk.anbu.maven.monorepo.BuildPlanMojo.projectList;
+import static uk.anbu.maven.monorepo.IncrementChangedModuleVersionMojo.extracted;
+
+/**
+ * Writes the affected modules of many {@code base...head} pairs, e.g. every open pull request against main,
+ * from one fetch, one dependency graph and one history walk. The graph is the one of the analyzed tree, so
+ * dependencies a head adds or removes are not taken into account.
+ */
+@Mojo(name = "batch-affected", defaultPhase = LifecyclePhase.INITIALIZE, requiresProject = false)
+public class BatchAffectedMojo extends AbstractMonorepoMojo {
+
+    // Pairs of revisions as base...head, e.g. origin/main...origin/feature
+    @Parameter(property = "monorepo.pairs")
+    private List<String> pairs = List.of();
+
+    // A file with one base...head pair per line, read in addition to monorepo.pairs; # starts a comment
+    @Parameter(property = "monorepo.pairsFile")
+    private File pairsFile;
+
+    // Defaults to target/monorepo-build/batch-affected.json
+    @Parameter(property = "monorepo.batchAffectedFile")
+    private File batchAffectedFile;
+
+    @Override
+    @SneakyThrows
+    public void execute() {
+        if (gitDir == null
+                && extracted(getLog(), project.getPackaging(), project.getModules(), basedir.getAbsolutePath())) {
+            return;
+        }
+        List<PairChangeDetector.Pair> revisionPairs = readPairs();
+        if (revisionPairs.isEmpty()) {
+            throw new MojoExecutionException("No pairs given, set monorepo.pairs or monorepo.pairsFile");
+        }
+
+        ModelCache modelCache = new ModelCache();
+        RunReport runReport = new RunReport();
+        GitHelper gitHelper = newGitHelper(modelCache, runReport);
+        try {
+            List<PairChangeDetector.Result> results = gitHelper.changedModulesOfPairs(revisionPairs);
+            DependencyUpdateAnalyzer analyzer = results.stream().allMatch(result -> result.changedModules().isEmpty())
+                    ? null
+                    : buildDependencyGraph(gitHelper, modelCache, runReport);
+            Function<Module, List<String>> directories = module -> analyzer.findProjectDirectories(module);
+
+            StringBuilder json = new StringBuilder("{\"pairs\":[");
+            for (int i = 0; i < results.size(); i++) {
+                PairChangeDetector.Result result = results.get(i);
+                Set<Module> affected = result.changedModules().isEmpty() ? Set.of()
+                        : runReport.time("affected-set", () -> analyzer.findModulesToUpdate(
+                                result.changedModules(), result.artifactUnchanged()));
+                if (result.error() != null) {
+                    getLog().warn(result.pair() + ": " + result.error());
+                } else {
+                    getLog().info(String.format("%s: %d changed, -pl %s", result.pair(),
+                            result.changedModules().size(), projectList(affected, directories)));
+                }
+                json.append(i == 0 ? "" : ",")
+                        .append("{\"base\":").append(Json.quote(result.pair().base()))
+                        .append(",\"head\":").append(Json.quote(result.pair().head()))
+                        .append(",\"mergeBase\":").append(result.mergeBase() == null ? "null" : Json.quote(result.mergeBase()))
+                        .append(",\"changed\":").append(Json.array(result.changedModules()))
+                        .append(",\"affected\":").append(Json.array(affected.stream().map(Module::toString).sorted().toList()))
+                        .append(",\"projects\":").append(Json.quote(projectList(affected, directories)))
+                        .append(",\"error\":").append(result.error() == null ? "null" : Json.quote(result.error()))
+                        .append('}');
+            }
+            json.append("]}").append(System.lineSeparator());
+
+            File file = batchAffectedFile != null ? batchAffectedFile
+                    : new File(buildDirectory(), "monorepo-build/batch-affected.json");
+            file.getParentFile().mkdirs();
+            Files.writeString(file.toPath(), json, StandardCharsets.UTF_8);
+            getLog().info(String.format("Affected modules of %d pairs written to %s", results.size(), file));
+        } finally {
+            writeRunReport("batch-affected", runReport, gitHelper);
+        }
+    }
+
+    @SneakyThrows
+    private List<PairChangeDetector.Pair> readPairs() {
+        List<String> specs = new ArrayList<>(pairs);
+        if (pairsFile != null) {
+            for (String line : Files.readAllLines(pairsFile.toPath(), StandardCharsets.UTF_8)) {
+                int comment = line.indexOf('#');
+                String spec = (comment < 0 ? line : line.substring(0, comment)).trim();
+                if (!spec.isEmpty()) {
+                    specs.add(spec);
+                }
+            }
+        }
+        try {
+            return specs.stream().map(PairChangeDetector.Pair::parse).toList();
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.execution.BuildSuccess;
+import org.apache.maven.execution.BuildSummary;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Records how long each project of a successful reactor build took, for the shard goal to balance on. Only
+ * active when the plugin is declared with {@code <extensions>true</extensions>}.
+ */
+@Named("monorepo-build-durations")
+@Singleton
+public class BuildDurationRecorder extends AbstractMavenLifecycleParticipant {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BuildDurationRecorder.class);
+
+    // sessions that only run these phases, or only plugin goals, say nothing about build times
+    private static final Set<String> NON_BUILD_PHASES = Set.of("pre-clean", "clean", "post-clean", "validate",
+            "initialize");
+
+    @Override
+    public void afterSessionEnd(MavenSession session) {
+        MavenProject topLevelProject = session.getTopLevelProject();
+        if (topLevelProject == null || session.getResult() == null || !buildsProjects(session.getGoals())) {
+            return;
+        }
+        File root = topLevelProject.getBasedir();
+        File stateDirectory = GitHelper.stateDirectory(root);
+        if (!GitHelper.isRepository(root)) {
+            return;
+        }
+
+        File file = new File(stateDirectory, BuildDurations.FILE_NAME);
+        BuildDurations durations = BuildDurations.load(file);
+        int recorded = 0;
+        for (MavenProject project : session.getProjects()) {
+            BuildSummary summary = session.getResult().getBuildSummary(project);
+            if (summary instanceof BuildSuccess && !project.getBasedir().equals(root)) {
+                durations.record(ModuleTrie.modulePath(root, project.getBasedir()), summary.getTime());
+                recorded++;
+            }
+        }
+        if (recorded > 0) {
+            durations.save(file);
+            LOG.debug("Recorded build durations of {} projects in {}", recorded, file);
+        }
+    }
+
+    static boolean buildsProjects(List<String> goals) {
+        return goals.stream().anyMatch(goal -> !goal.contains(":") && !NON_BUILD_PHASES.contains(goal));
+    }
+}
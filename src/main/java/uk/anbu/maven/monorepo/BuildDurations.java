@@ -0,0 +1,81 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Build time per project directory, relative to the root, kept as a moving average over the recorded builds
+ * so one slow run does not skew the estimate. Stored as one tab-separated line per project.
+ */
+public class BuildDurations {
+
+    public static final String FILE_NAME = "durations.tsv";
+
+    // weight of the latest build in the moving average
+    private static final double SMOOTHING = 0.3;
+
+    private final Map<String, Long> millis = new TreeMap<>();
+
+    public static BuildDurations load(File file) {
+        BuildDurations durations = new BuildDurations();
+        if (!file.isFile()) {
+            return durations;
+        }
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    durations.millis.put(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // an unreadable history only makes the estimates less accurate
+            durations.millis.clear();
+        }
+        return durations;
+    }
+
+    @SneakyThrows
+    public void save(File file) {
+        List<String> lines = new ArrayList<>();
+        millis.forEach((directory, value) -> lines.add(directory + "\t" + value));
+        file.getParentFile().mkdirs();
+        File temporary = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(temporary.toPath(), lines, StandardCharsets.UTF_8);
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void record(String directory, long buildMillis) {
+        millis.merge(directory, buildMillis,
+                (previous, latest) -> Math.round(previous * (1 - SMOOTHING) + latest * SMOOTHING));
+    }
+
+    public boolean isEmpty() {
+        return millis.isEmpty();
+    }
+
+    // Projects without history are assumed to take as long as the median recorded project
+    public long estimate(Collection<String> directories) {
+        long fallback = median();
+        return directories.stream().mapToLong(directory -> millis.getOrDefault(directory, fallback)).sum();
+    }
+
+    private long median() {
+        if (millis.isEmpty()) {
+            return 1;
+        }
+        List<Long> sorted = millis.values().stream().sorted().toList();
+        return Math.max(1, sorted.get(sorted.size() / 2));
+    }
+}
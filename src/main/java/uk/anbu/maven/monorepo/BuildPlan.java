@@ -0,0 +1,133 @@
+package uk.anbu.maven.monorepo;
+
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Orders a set of modules into waves. Every module comes after all of its dependencies and contained modules
+ * that are part of the set, so the modules of one wave can be built in parallel once the previous waves are
+ * done. The critical path is the longest chain of modules that have to be built one after another.
+ * Modules on a dependency cycle cannot be ordered among themselves, so cycles are put in waves of their own
+ * once everything it depends on is built, and the modules that depend on it follow in the waves after.
+ */
+public record BuildPlan(List<List<Module>> waves, List<Module> criticalPath, List<Module> cyclic) {
+
+    public static BuildPlan of(ModuleGraph graph, Collection<Module> modules) {
+        Set<Module> planned = new HashSet<>(modules);
+        // graph order keeps the plan stable regardless of the order of the input
+        List<Module> ordered = graph.getModules().stream().filter(planned::contains).toList();
+
+        Map<Module, Integer> pending = new HashMap<>();
+        Map<Module, List<Module>> dependents = new HashMap<>();
+        for (Module module : ordered) {
+            int count = 0;
+            for (Module dependency : graph.getDependencies(module)) {
+                if (planned.contains(dependency)) {
+                    dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(module);
+                    count++;
+                }
+            }
+            pending.put(module, count);
+        }
+
+        Map<Module, Integer> waveOf = new HashMap<>();
+        Map<Module, Module> longestPredecessor = new HashMap<>();
+        List<List<Module>> waves = new ArrayList<>();
+        Set<Module> placed = new HashSet<>();
+        List<Module> cyclic = new ArrayList<>();
+        Deque<Module> ready = new ArrayDeque<>();
+        ordered.stream().filter(module -> pending.get(module) == 0).forEach(ready::add);
+        while (placed.size() < ordered.size()) {
+            if (ready.isEmpty()) {
+                // what is left waits on a cycle; the cycles nothing else holds up get a wave of their own
+                List<Module> wave = cyclesReady(graph, ordered, planned, placed);
+                waves.add(new ArrayList<>(wave));
+                cyclic.addAll(wave);
+                placed.addAll(wave);
+                for (Module module : wave) {
+                    waveOf.put(module, waves.size() - 1);
+                }
+                for (Module module : wave) {
+                    release(module, waves.size() - 1, dependents, pending, placed, waveOf, longestPredecessor, ready);
+                }
+                continue;
+            }
+            Module module = ready.poll();
+            int wave = waveOf.merge(module, 0, Math::max);
+            if (wave == waves.size()) {
+                waves.add(new ArrayList<>());
+            }
+            waves.get(wave).add(module);
+            placed.add(module);
+            release(module, wave, dependents, pending, placed, waveOf, longestPredecessor, ready);
+        }
+
+        List<Module> criticalPath = new ArrayList<>();
+        Module step = waves.isEmpty() ? null : waves.get(waves.size() - 1).get(0);
+        for (; step != null; step = longestPredecessor.get(step)) {
+            criticalPath.add(0, step);
+        }
+        cyclic.sort(Comparator.comparingInt(ordered::indexOf));
+        return new BuildPlan(waves.stream().map(List::copyOf).toList(), List.copyOf(criticalPath),
+                List.copyOf(cyclic));
+    }
+
+    // Moves the dependents of a placed module to the wave after it, queueing those with nothing left to wait for
+    private static void release(Module module, int wave, Map<Module, List<Module>> dependents,
+                                Map<Module, Integer> pending, Set<Module> placed, Map<Module, Integer> waveOf,
+                                Map<Module, Module> longestPredecessor, Deque<Module> ready) {
+        for (Module dependent : dependents.getOrDefault(module, List.of())) {
+            if (placed.contains(dependent)) {
+                // another member of the same cycle
+                continue;
+            }
+            if (waveOf.getOrDefault(dependent, -1) < wave + 1) {
+                waveOf.put(dependent, wave + 1);
+                longestPredecessor.put(dependent, module);
+            }
+            if (pending.merge(dependent, -1, Integer::sum) == 0) {
+                ready.add(dependent);
+            }
+        }
+    }
+
+    /**
+     * Members of the cycles among the unplaced modules whose other dependencies are all placed. A module is on
+     * such a cycle when it reaches itself, and every unplaced module it reaches reaches it back.
+     */
+    private static List<Module> cyclesReady(ModuleGraph graph, List<Module> ordered, Set<Module> planned,
+                                            Set<Module> placed) {
+        List<Module> unplaced = ordered.stream().filter(module -> !placed.contains(module)).toList();
+        Map<Module, Set<Module>> upstream = new HashMap<>();
+        for (Module module : unplaced) {
+            Set<Module> reached = new HashSet<>();
+            Deque<Module> queue = new ArrayDeque<>(List.of(module));
+            while (!queue.isEmpty()) {
+                for (Module dependency : graph.getDependencies(queue.poll())) {
+                    if (planned.contains(dependency) && !placed.contains(dependency) && reached.add(dependency)) {
+                        queue.add(dependency);
+                    }
+                }
+            }
+            upstream.put(module, reached);
+        }
+        return unplaced.stream()
+                .filter(module -> upstream.get(module).contains(module)
+                        && upstream.get(module).stream().allMatch(other -> upstream.get(other).contains(module)))
+                .toList();
+    }
+
+    public int size() {
+        return waves.stream().mapToInt(List::size).sum();
+    }
+}
@@ -0,0 +1,97 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static uk.anbu.maven.monorepo.IncrementChangedModuleVersionMojo.extracted;
+
+/**
+ * Writes the modules affected by the changes since the last successful build as waves that can be built in
+ * parallel, each with a ready-to-use {@code -pl} list, together with the critical path.
+ */
+@Mojo(name = "build-plan", defaultPhase = LifecyclePhase.INITIALIZE, requiresProject = false)
+public class BuildPlanMojo extends AbstractMonorepoMojo {
+
+    // Defaults to target/monorepo-build/build-plan.json
+    @Parameter(property = "monorepo.buildPlanFile")
+    private File buildPlanFile;
+
+    @Override
+    @SneakyThrows
+    public void execute() {
+        if (gitDir == null
+                && extracted(getLog(), project.getPackaging(), project.getModules(), basedir.getAbsolutePath())) {
+            return;
+        }
+
+        ModelCache modelCache = new ModelCache();
+        RunReport runReport = new RunReport();
+        GitHelper gitHelper = newGitHelper(modelCache, runReport);
+        try {
+            ChangeAnalysis analysis = analyzeChanges(gitHelper, modelCache, runReport);
+            if (!analysis.hasChanges()) {
+                getLog().info("No modules changed since last successful build.");
+                Files.writeString(planFile().toPath(), toJson(new BuildPlan(List.of(), List.of(), List.of()),
+                        module -> List.of()), StandardCharsets.UTF_8);
+                return;
+            }
+
+            DependencyUpdateAnalyzer analyzer = analysis.analyzer();
+            Set<Module> affected = skipInstalled(analysis.affectedModules(runReport), gitHelper, analyzer, runReport);
+            BuildPlan plan = runReport.time("build-plan", () -> BuildPlan.of(analyzer.getModuleGraph(), affected));
+            Function<Module, List<String>> directories = analyzer::findProjectDirectories;
+
+            for (int i = 0; i < plan.waves().size(); i++) {
+                getLog().info(String.format("Wave %d: -pl %s", i + 1, projectList(plan.waves().get(i), directories)));
+            }
+            getLog().info("Critical path: " + plan.criticalPath());
+            if (!plan.cyclic().isEmpty()) {
+                getLog().warn("Modules on a dependency cycle were put in waves of their own: " + plan.cyclic());
+            }
+            Files.writeString(planFile().toPath(), toJson(plan, directories), StandardCharsets.UTF_8);
+            getLog().info(String.format("Build plan with %d modules in %d waves written to %s",
+                    plan.size(), plan.waves().size(), planFile()));
+        } finally {
+            writeRunReport("build-plan", runReport, gitHelper);
+        }
+    }
+
+    private File planFile() {
+        File file = buildPlanFile != null ? buildPlanFile : new File(buildDirectory(), "monorepo-build/build-plan.json");
+        file.getParentFile().mkdirs();
+        return file;
+    }
+
+    static String projectList(Collection<Module> modules, Function<Module, List<String>> directories) {
+        return String.join(",", modules.stream().flatMap(module -> directories.apply(module).stream()).toList());
+    }
+
+    private static String toJson(BuildPlan plan, Function<Module, List<String>> directories) {
+        StringBuilder json = new StringBuilder("{\"waves\":[");
+        for (int i = 0; i < plan.waves().size(); i++) {
+            List<Module> wave = plan.waves().get(i);
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"modules\":").append(Json.array(wave.stream().map(Module::toString).toList()))
+                    .append(",\"projects\":").append(Json.quote(projectList(wave, directories)))
+                    .append('}');
+        }
+        return json.append("],\"criticalPath\":")
+                .append(Json.array(plan.criticalPath().stream().map(Module::toString).toList()))
+                .append(",\"cyclic\":")
+                .append(Json.array(plan.cyclic().stream().map(Module::toString).toList()))
+                .append('}')
+                .append(System.lineSeparator())
+                .toString();
+    }
+}
@@ -0,0 +1,51 @@
+package uk.anbu.maven.monorepo;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Classifies a changed file by its path relative to the directory of its module. Rules have the form
+ * {@code KIND=glob}, e.g. {@code TEST=src/testFixtures/**}, and the first matching rule wins. Configured rules
+ * are checked before the defaults, and a file no rule matches is {@link ChangeKind#OTHER}.
+ */
+public class ChangeClassifier {
+
+    public static final List<String> DEFAULT_RULES = List.of(
+            "POM=pom.xml",
+            "TEST=src/test/**",
+            "TEST=src/it/**",
+            "RESOURCES=src/main/resources/**",
+            "MAIN=src/main/**",
+            "DOCS=src/site/**",
+            "DOCS=docs/**",
+            "DOCS=**.md");
+
+    private record Rule(ChangeKind kind, PathMatcher matcher) {}
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    public ChangeClassifier(List<String> rules) {
+        List<String> all = new ArrayList<>(rules);
+        all.addAll(DEFAULT_RULES);
+        for (String rule : all) {
+            int separator = rule.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Change kind rule is not KIND=glob: " + rule);
+            }
+            this.rules.add(new Rule(ChangeKind.valueOf(rule.substring(0, separator).trim()),
+                    FileSystems.getDefault().getPathMatcher("glob:" + rule.substring(separator + 1).trim())));
+        }
+    }
+
+    public ChangeKind classify(String pathInModule) {
+        Path path = Path.of(pathInModule);
+        return rules.stream()
+                .filter(rule -> rule.matcher().matches(path))
+                .map(Rule::kind)
+                .findFirst()
+                .orElse(ChangeKind.OTHER);
+    }
+}
@@ -0,0 +1,37 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@Builder(toBuilder = true)
+public class ChangeDetectionOptions {
+    // Globs for files outside every module that should mark all top-level modules as changed
+    @Builder.Default
+    List<String> outsideModuleTriggers = List.of();
+
+    @Builder.Default
+    FetchMode fetchMode = FetchMode.FULL;
+
+    // Number of commits fetched per ref in SHALLOW mode
+    @Builder.Default
+    int fetchDepth = 50;
+
+    // Remember the baseline found for a HEAD and tag set so repeated runs skip listing the tags and the walk
+    @Builder.Default
+    boolean cacheBaseline = true;
+
+    // Take the modules from the pom.xml files of the HEAD commit instead of the working tree
+    @Builder.Default
+    boolean readFromGit = false;
+
+    // Tell changes that leave the published artifact as it was, e.g. to tests only, from the others
+    @Builder.Default
+    boolean classifyChanges = true;
+
+    // KIND=glob rules checked before ChangeClassifier.DEFAULT_RULES
+    @Builder.Default
+    List<String> changeKindRules = List.of();
+}
@@ -0,0 +1,22 @@
+package uk.anbu.maven.monorepo;
+
+// What a changed file is to its module; only some kinds change the artifact the module publishes
+public enum ChangeKind {
+    POM(true),
+    MAIN(true),
+    RESOURCES(true),
+    TEST(false),
+    DOCS(false),
+    // anything no rule matched, assumed to end up in the artifact
+    OTHER(true);
+
+    private final boolean affectsArtifact;
+
+    ChangeKind(boolean affectsArtifact) {
+        this.affectsArtifact = affectsArtifact;
+    }
+
+    public boolean affectsArtifact() {
+        return affectsArtifact;
+    }
+}
@@ -0,0 +1,306 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.plugin.logging.Log;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Keeps the affected set of a working tree up to date while files change. The committed changes since the last
+ * successful build are diffed once, and again only when HEAD moves. After a file event only the modules it
+ * touched, found through the {@link ModuleTrie}, are compared with HEAD again, so undone edits drop out. The
+ * module trie and the dependency graph are only refreshed when a pom.xml is touched, and then only that POM is
+ * parsed again.
+ */
+public class ChangeWatcher {
+
+    /**
+     * Changed modules with the kinds of their changes, committed or not, the affected modules and the project
+     * directories to pass as {@code -pl}.
+     */
+    public record Snapshot(Map<String, Set<ChangeKind>> changes, List<String> affected, List<String> projects) {
+    }
+
+    private final Log log;
+    private final Path root;
+    private final File rootPom;
+    private final Path gitDirectory;
+    private final ModelCache modelCache = new ModelCache();
+    private final ModuleDiscovery moduleDiscovery;
+    private final GitHelper gitHelper;
+    private final ChangeClassifier classifier;
+    private final List<PathMatcher> outsideModuleTriggers;
+    private final long debounceMillis;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    private ModuleTrie moduleTrie;
+    private DependencyUpdateAnalyzer analyzer;
+    private String headCommit;
+    private Map<String, Set<ChangeKind>> committed = Map.of();
+    private final Map<String, Set<ChangeKind>> edited = new HashMap<>();
+    private Snapshot lastSnapshot;
+
+    public ChangeWatcher(Log log, File basedir, ChangeDetectionOptions options, ModuleDiscovery moduleDiscovery,
+                         long debounceMillis) {
+        this.log = log;
+        this.root = basedir.getAbsoluteFile().toPath().normalize();
+        this.rootPom = root.resolve("pom.xml").toFile();
+        this.gitDirectory = GitHelper.gitDirectory(basedir).getAbsoluteFile().toPath().normalize();
+        this.moduleDiscovery = moduleDiscovery;
+        this.gitHelper = new GitHelper(log, basedir, options, modelCache, new RunReport());
+        this.classifier = options.isClassifyChanges() ? new ChangeClassifier(options.getChangeKindRules()) : null;
+        this.outsideModuleTriggers = options.getOutsideModuleTriggers().stream()
+                .map(glob -> FileSystems.getDefault().getPathMatcher("glob:" + glob))
+                .toList();
+        this.debounceMillis = debounceMillis;
+    }
+
+    // Watches until the thread is interrupted, passing every snapshot that differs from the previous one
+    public void watch(Consumer<Snapshot> listener) throws IOException, InterruptedException {
+        gitHelper.keepRepositoryOpen();
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            registerTree(watchService, root);
+            // commits only show up in the git directory, which is watched without its subdirectories
+            watchedDirectories.put(gitDirectory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE),
+                    gitDirectory);
+            log.info(String.format("Watching %d directories below %s", watchedDirectories.size() - 1, root));
+
+            resync();
+            publish(listener);
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<String> paths = new LinkedHashSet<>();
+                boolean resync = false;
+                // editors save in several steps, so wait until the tree is quiet before recomputing
+                do {
+                    resync |= drain(watchService, key, paths);
+                } while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null);
+
+                if (resync || !Objects.equals(headCommit, gitHelper.headCommitId())) {
+                    resync();
+                } else if (!paths.isEmpty()) {
+                    apply(paths);
+                }
+                publish(listener);
+            }
+        }
+    }
+
+    // Collects the paths of a key's events relative to the root; true if events were lost
+    private boolean drain(WatchService watchService, WatchKey key, Set<String> paths) throws IOException {
+        Path directory = watchedDirectories.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            if (directory == null || directory.startsWith(gitDirectory)) {
+                // only wakes the loop up to look at HEAD
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            String path = relativePath(child);
+            if (isIgnored(path)) {
+                continue;
+            }
+            if (Files.isDirectory(child)) {
+                // only files are attributed, but a directory created or moved in brings its whole content along
+                if (event.kind() == ENTRY_CREATE) {
+                    registerTree(watchService, child).forEach(file -> paths.add(relativePath(file)));
+                }
+                continue;
+            }
+            paths.add(path);
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+        return overflow;
+    }
+
+    // Attributes edited paths to their modules, refreshing modules and graph first if a POM was among them
+    private void apply(Collection<String> paths) {
+        List<String> poms = paths.stream()
+                .filter(path -> path.equals("pom.xml") || path.endsWith("/pom.xml"))
+                .toList();
+        if (!poms.isEmpty()) {
+            log.info("Re-reading " + String.join(", ", poms));
+            refreshModules(poms);
+        }
+        // the modules touched are compared with HEAD again, so an edit that was undone no longer counts
+        Set<String> touched = new LinkedHashSet<>();
+        boolean outside = false;
+        for (String path : paths) {
+            var module = moduleTrie.findModule(path);
+            if (module.isPresent()) {
+                touched.add(module.get());
+            } else {
+                outside |= isOutsideModuleTrigger(path);
+            }
+        }
+        if (outside) {
+            // a trigger marks every top-level module, so only a full status tells what is left
+            edited.clear();
+            attributeUncommitted(List.of());
+        } else if (!touched.isEmpty()) {
+            touched.forEach(edited::remove);
+            attributeUncommitted(touched);
+        }
+    }
+
+    // Attributes the uncommitted files below the given modules, nested modules not among them left as they are
+    private void attributeUncommitted(Collection<String> modules) {
+        gitHelper.uncommittedPaths(modules).stream()
+                .filter(path -> !isIgnored(path))
+                .filter(path -> modules.isEmpty() || moduleTrie.findModule(path).filter(modules::contains).isPresent())
+                .forEach(this::attribute);
+    }
+
+    // Diffs the committed changes again and starts over from the uncommitted files
+    private void resync() {
+        headCommit = gitHelper.headCommitId();
+        refreshModules(List.of());
+        List<String> changedModules = gitHelper.changedModuleList();
+        if (changedModules == null) {
+            log.warn("No baseline to compare against, only edits in the working tree are tracked");
+            changedModules = List.of();
+        }
+        changedModules = gitHelper.withModulesBehindDependencies(changedModules, analyzer);
+        Map<String, Set<ChangeKind>> kinds = new HashMap<>();
+        for (String module : changedModules) {
+            kinds.put(module, EnumSet.copyOf(
+                    gitHelper.getChangeKinds().getOrDefault(module, EnumSet.of(ChangeKind.OTHER))));
+        }
+        committed = kinds;
+        edited.clear();
+        attributeUncommitted(List.of());
+    }
+
+    private void refreshModules(List<String> changedPoms) {
+        // the model cache only parses POMs whose modification time changed
+        moduleTrie = ModuleTrie.fromDeclaredModules(rootPom, modelCache);
+        gitHelper.setModuleTrie(moduleTrie);
+        DependencyUpdateAnalyzer next = new DependencyUpdateAnalyzer(modelCache, log, new RunReport());
+        next.setModuleDiscovery(moduleDiscovery);
+        if (analyzer == null) {
+            next.buildDependencyGraph(rootPom.getAbsolutePath());
+        } else {
+            next.buildDependencyGraph(rootPom.getAbsolutePath(), analyzer.getPomEntries(), changedPoms);
+        }
+        analyzer = next;
+    }
+
+    private void attribute(String path) {
+        var module = moduleTrie.findModule(path);
+        if (module.isPresent()) {
+            ChangeKind kind = classifier == null || path.length() <= module.get().length()
+                    ? ChangeKind.OTHER
+                    : classifier.classify(path.substring(module.get().length() + 1));
+            edited.computeIfAbsent(module.get(), key -> EnumSet.noneOf(ChangeKind.class)).add(kind);
+        } else if (isOutsideModuleTrigger(path)) {
+            log.info(String.format("%s is outside every module and marks all modules as changed", path));
+            moduleTrie.getTopLevelModules().forEach(topLevel ->
+                    edited.computeIfAbsent(topLevel, key -> EnumSet.noneOf(ChangeKind.class)).add(ChangeKind.OTHER));
+        }
+    }
+
+    private void publish(Consumer<Snapshot> listener) {
+        Map<String, Set<ChangeKind>> changes = new TreeMap<>();
+        committed.forEach((module, kinds) -> changes.put(module, EnumSet.copyOf(kinds)));
+        edited.forEach((module, kinds) ->
+                changes.computeIfAbsent(module, key -> EnumSet.noneOf(ChangeKind.class)).addAll(kinds));
+        Set<String> artifactUnchanged = new LinkedHashSet<>();
+        changes.forEach((module, kinds) -> {
+            if (kinds.stream().noneMatch(ChangeKind::affectsArtifact)) {
+                artifactUnchanged.add(module);
+            }
+        });
+
+        Set<Module> affected = changes.isEmpty()
+                ? Set.of()
+                : analyzer.findModulesToUpdate(new ArrayList<>(changes.keySet()), artifactUnchanged);
+        Snapshot snapshot = new Snapshot(changes,
+                affected.stream().map(Module::toString).sorted().toList(),
+                affected.stream().flatMap(module -> analyzer.findProjectDirectories(module).stream()).sorted().toList());
+        if (!snapshot.equals(lastSnapshot)) {
+            lastSnapshot = snapshot;
+            listener.accept(snapshot);
+        }
+    }
+
+    // Registers a directory and every directory below it that is not ignored, returning the files found
+    private List<Path> registerTree(WatchService watchService, Path start) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+                    throws IOException {
+                if (!directory.equals(root) && moduleDiscovery.isIgnored(root.relativize(directory))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watchedDirectories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE),
+                        directory);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private boolean isOutsideModuleTrigger(String path) {
+        return outsideModuleTriggers.stream().anyMatch(matcher -> matcher.matches(Path.of(path)));
+    }
+
+    // Editor swap files, build output and the like match the same globs as the directories skipped above
+    private boolean isIgnored(String path) {
+        for (Path candidate = Path.of(path); candidate != null; candidate = candidate.getParent()) {
+            if (moduleDiscovery.isIgnored(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String relativePath(Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+}
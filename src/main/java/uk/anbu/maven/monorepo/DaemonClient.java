@@ -0,0 +1,87 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Sends requests to the {@link MonorepoDaemon} of a repository. Every method returns empty when no daemon is
+ * listening, so callers can fall back to doing the work themselves.
+ */
+public final class DaemonClient {
+
+    private DaemonClient() {
+    }
+
+    /**
+     * Sends the request only if the daemon analyzes with the same options, so its answer is the one a local
+     * analysis would give. When the options ask for a fetch, the daemon fetches first. Empty when no daemon is
+     * listening or its options differ.
+     */
+    public static Optional<MonorepoDaemon.Answer> query(File basedir, String request, ChangeDetectionOptions options,
+                                                        List<String> discoveryIgnores, Log log) throws IOException {
+        Optional<List<String>> ping = request(basedir, "ping");
+        if (ping.isEmpty()) {
+            return Optional.empty();
+        }
+        if (!ping.get().contains(MonorepoDaemon.Answer.line("options",
+                MonorepoDaemon.describe(options, discoveryIgnores)))) {
+            log.info("The daemon runs with other options, analyzing here instead");
+            return Optional.empty();
+        }
+        if (options.getFetchMode() != FetchMode.NONE) {
+            if (!ping.get().contains(MonorepoDaemon.Answer.line("fetch", MonorepoDaemon.describeFetch(options)))) {
+                log.info("The daemon fetches with another fetch mode, analyzing here instead");
+                return Optional.empty();
+            }
+            request(basedir, "refresh");
+        }
+        return query(basedir, request);
+    }
+
+    public static Optional<MonorepoDaemon.Answer> query(File basedir, String request) throws IOException {
+        Optional<List<String>> lines = request(basedir, request);
+        return lines.isEmpty() ? Optional.empty() : Optional.of(MonorepoDaemon.Answer.parse(lines.get()));
+    }
+
+    // The raw response lines, without the empty line that ends them
+    public static Optional<List<String>> request(File basedir, String request) throws IOException {
+        Path socket = MonorepoDaemon.socketPath(basedir);
+        if (!Files.exists(socket)) {
+            return Optional.empty();
+        }
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+            writer.write(request + "\n");
+            writer.flush();
+            BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            List<String> lines = new ArrayList<>();
+            for (String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine()) {
+                lines.add(line);
+            }
+            return Optional.of(lines);
+        } catch (ConnectException e) {
+            // the socket of a daemon that is gone
+            return Optional.empty();
+        } catch (SocketException e) {
+            if (e.getMessage() != null && e.getMessage().contains("Connection refused")) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import static uk.anbu.maven.monorepo.IncrementChangedModuleVersionMojo.extracted;
+
+/**
+ * Runs a {@link MonorepoDaemon} for the repository in the foreground until it is stopped with
+ * {@code -Dmonorepo.daemon.stop} or Ctrl-C. While it runs, {@code list-changed-modules} asks it instead of
+ * analyzing the repository itself, and hooks can query its socket directly.
+ */
+@Mojo(name = "daemon")
+public class DaemonMojo extends AbstractMonorepoMojo {
+
+    // Stop the daemon running for this repository instead of starting one
+    @Parameter(property = "monorepo.daemon.stop", defaultValue = "false")
+    private boolean stop;
+
+    // Seconds between fetches from the remote, 0 to fetch only at start and on a refresh request
+    @Parameter(property = "monorepo.daemon.fetchInterval", defaultValue = "0")
+    private long fetchInterval;
+
+    @Override
+    @SneakyThrows
+    public void execute() {
+        if (gitDir != null || readFromGit) {
+            throw new MojoExecutionException("The daemon reads POMs from the working tree, "
+                    + "monorepo.gitDir and monorepo.readFromGit are not supported");
+        }
+        if (stop) {
+            boolean stopped = DaemonClient.request(basedir, "stop").isPresent();
+            getLog().info(stopped ? "Stopped the daemon" : "No daemon is running for " + basedir);
+            return;
+        }
+        if (extracted(getLog(), project.getPackaging(), project.getModules(), basedir.getAbsolutePath())) {
+            return;
+        }
+        new MonorepoDaemon(getLog(), basedir, changeDetectionOptions(), discoveryIgnores, fetchInterval).serve();
+    }
+}
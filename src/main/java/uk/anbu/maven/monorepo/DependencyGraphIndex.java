@@ -0,0 +1,142 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.PomEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * On-disk snapshot of the POM entries behind the dependency graph, tagged with the commit it was written at.
+ * Strings are stored once in a table and referenced by index to keep the file small.
+ */
+public record DependencyGraphIndex(String commitId, Map<String, PomEntry> entries) {
+
+    private static final int MAGIC = 0x4d524749;
+    private static final int FORMAT_VERSION = 3;
+
+    public static Optional<DependencyGraphIndex> load(File file) {
+        if (!file.isFile()) {
+            return Optional.empty();
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            String[] strings = new String[input.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = input.readUTF();
+            }
+            String commitId = strings[input.readInt()];
+            int entryCount = input.readInt();
+            Map<String, PomEntry> entries = new LinkedHashMap<>();
+            for (int i = 0; i < entryCount; i++) {
+                String path = strings[input.readInt()];
+                long lastModified = input.readLong();
+                Module module = new Module(strings[input.readInt()], strings[input.readInt()]);
+                String packaging = strings[input.readInt()];
+                List<String> modules = new ArrayList<>();
+                for (int j = input.readInt(); j > 0; j--) {
+                    modules.add(strings[input.readInt()]);
+                }
+                Set<Module> dependencies = readModules(input, strings);
+                Set<Module> testJarDependencies = readModules(input, strings);
+                entries.put(path, new PomEntry(path, lastModified, module, packaging, modules, dependencies,
+                        testJarDependencies));
+            }
+            return Optional.of(new DependencyGraphIndex(commitId, entries));
+        } catch (IOException | RuntimeException e) {
+            // a corrupt or truncated index is simply rebuilt
+            return Optional.empty();
+        }
+    }
+
+    @SneakyThrows
+    public void save(File file) {
+        Map<String, Integer> table = new LinkedHashMap<>();
+        intern(table, commitId);
+        for (PomEntry entry : entries.values()) {
+            intern(table, entry.path());
+            intern(table, entry.module().groupId());
+            intern(table, entry.module().artifactId());
+            intern(table, entry.packaging());
+            entry.modules().forEach(module -> intern(table, module));
+            entry.dependencies().forEach(dependency -> {
+                intern(table, dependency.groupId());
+                intern(table, dependency.artifactId());
+            });
+            entry.testJarDependencies().forEach(dependency -> {
+                intern(table, dependency.groupId());
+                intern(table, dependency.artifactId());
+            });
+        }
+
+        file.getParentFile().mkdirs();
+        // a unique name per writer, so concurrent builds never interleave in the same temporary file
+        Path temporary = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeInt(table.size());
+                for (String string : table.keySet()) {
+                    output.writeUTF(string);
+                }
+                output.writeInt(table.get(commitId));
+                output.writeInt(entries.size());
+                for (PomEntry entry : entries.values()) {
+                    output.writeInt(table.get(entry.path()));
+                    output.writeLong(entry.lastModified());
+                    output.writeInt(table.get(entry.module().groupId()));
+                    output.writeInt(table.get(entry.module().artifactId()));
+                    output.writeInt(table.get(entry.packaging()));
+                    output.writeInt(entry.modules().size());
+                    for (String module : entry.modules()) {
+                        output.writeInt(table.get(module));
+                    }
+                    writeModules(output, table, entry.dependencies());
+                    writeModules(output, table, entry.testJarDependencies());
+                }
+            }
+            Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static Set<Module> readModules(DataInputStream input, String[] strings) throws IOException {
+        Set<Module> modules = new HashSet<>();
+        for (int j = input.readInt(); j > 0; j--) {
+            modules.add(new Module(strings[input.readInt()], strings[input.readInt()]));
+        }
+        return modules;
+    }
+
+    private static void writeModules(DataOutputStream output, Map<String, Integer> table, Set<Module> modules)
+            throws IOException {
+        output.writeInt(modules.size());
+        for (Module module : modules) {
+            output.writeInt(table.get(module.groupId()));
+            output.writeInt(table.get(module.artifactId()));
+        }
+    }
+
+    private static void intern(Map<String, Integer> table, String value) {
+        table.putIfAbsent(value, table.size());
+    }
+}
@@ -3,11 +3,11 @@ package uk.anbu.maven.monorepo;
 import lombok.SneakyThrows;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Model;
-import org.apache.maven.model.ModelBase;
-import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
 
 import java.io.File;
-import java.io.FileReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -27,56 +27,305 @@ public class DependencyUpdateAnalyzer {
         }
     }
 
-    private record SubModuleInfo(Module subModule, Set<Module> dependencies, Set<Module> children) {}
+    /**
+     * A single pom.xml reduced to what the graph needs; path is relative to the root directory. The modules
+     * whose test-jar is used are also listed in testJarDependencies.
+     */
+    public record PomEntry(String path, long lastModified, Module module, String packaging,
+                           List<String> modules, Set<Module> dependencies, Set<Module> testJarDependencies) {}
+
+    private record SubModuleInfo(Module subModule, Set<Module> dependencies, Set<Module> testJarDependencies,
+                                 Set<Module> children) {}
+
+    private static final String ROOT_POM = "pom.xml";
 
     private Map<Module, SubModuleInfo> modules = new HashMap<>();
 
+    private NavigableMap<String, PomEntry> pomEntries = new TreeMap<>();
+
+    private ModuleGraph moduleGraph = new ModuleGraph(Map.of(), Map.of());
+
+    private Map<Module, String> moduleDirectories = Map.of();
+
+    // module to the modules that use its test-jar, which changes with its tests
+    private Map<Module, Set<Module>> testJarDependents = Map.of();
+
+    private final ModelCache modelCache;
+
+    private final Log log;
+
+    private final RunReport runReport;
+
+    private ModuleDiscovery moduleDiscovery = new ModuleDiscovery(ModuleDiscovery.DEFAULT_IGNORES);
+
+    public DependencyUpdateAnalyzer() {
+        this(new ModelCache());
+    }
+
+    public DependencyUpdateAnalyzer(ModelCache modelCache) {
+        this(modelCache, new SystemStreamLog(), new RunReport());
+    }
+
+    public DependencyUpdateAnalyzer(ModelCache modelCache, Log log, RunReport runReport) {
+        this.modelCache = modelCache;
+        this.log = log;
+        this.runReport = runReport;
+    }
+
+    // Decides which directories are skipped when an aggregator without declared modules has to be walked
+    public void setModuleDiscovery(ModuleDiscovery moduleDiscovery) {
+        this.moduleDiscovery = moduleDiscovery;
+    }
+
     public void buildDependencyGraph(String rootPomPath) {
-        buildDependencyGraph(new File(rootPomPath));
-        printDependencyList();
-        System.out.println("---------".repeat(10));
-        replaceChildModuleDependenciesWithParentModuleDependencies();
-        printDependencyList();
+        buildDependencyGraph(rootPomPath, Map.of(), null);
+    }
+
+    /**
+     * Builds the graph starting from previously indexed POM entries. Only POMs listed in changedPomPaths, whose
+     * modification time differs from the index, or that belong to a newly declared submodule are parsed again.
+     * A null changedPomPaths means the previous entries cannot be trusted and everything is re-read.
+     */
+    public void buildDependencyGraph(String rootPomPath, Map<String, PomEntry> previousEntries,
+                                     Collection<String> changedPomPaths) {
+        File rootPom = new File(rootPomPath);
+        int parsedBefore = modelCache.getParsedCount();
+        pomEntries = runReport.time("pom-parsing", () -> changedPomPaths == null || previousEntries.isEmpty()
+                ? scanPomEntries(rootPom)
+                : refreshPomEntries(rootPom, previousEntries, changedPomPaths));
+        runReport.increment("poms-parsed", modelCache.getParsedCount() - parsedBefore);
+        buildModuleGraph();
+    }
+
+    /**
+     * Builds the graph from projects the Maven reactor has already loaded, so no POM is read again. Their
+     * coordinates and dependencies are interpolated and include everything inherited from parent POMs.
+     * Projects outside the root directory are ignored.
+     */
+    public void buildDependencyGraph(File rootDirectory, Collection<MavenProject> projects) {
+        Path root = rootDirectory.getAbsoluteFile().toPath().normalize();
+        pomEntries = runReport.time("reactor-projects", () -> {
+            NavigableMap<String, PomEntry> entries = new TreeMap<>();
+            for (MavenProject project : projects) {
+                Path pom = project.getFile().getAbsoluteFile().toPath().normalize();
+                if (!pom.startsWith(root)) {
+                    continue;
+                }
+                String path = relativePath(root, pom);
+                entries.put(path, new PomEntry(path, lastModified(pom),
+                        new Module(project.getGroupId(), project.getArtifactId()),
+                        project.getPackaging(),
+                        List.copyOf(project.getModules()),
+                        project.getDependencies().stream()
+                                .map(DependencyUpdateAnalyzer::getModule)
+                                .collect(Collectors.toSet()),
+                        testJarModules(project.getDependencies())));
+            }
+            return entries;
+        });
+        buildModuleGraph();
+    }
+
+    /**
+     * Builds the graph from already parsed models keyed by their pom.xml path relative to the root, e.g. read
+     * from a git tree. The POMs are selected exactly as a scan of the working tree would select them.
+     */
+    public void buildDependencyGraph(Map<String, Model> modelsByPath) {
+        NavigableMap<String, Model> models = new TreeMap<>(modelsByPath);
+        Model topLevelPomModel = models.get(ROOT_POM);
+        if (topLevelPomModel == null) {
+            throw new IllegalStateException("No " + ROOT_POM + " at the root of the repository");
+        }
+        pomEntries = discover(toPomEntry(ROOT_POM, -1, topLevelPomModel), Map.of(),
+                paths -> {
+                    Map<String, PomEntry> entries = new HashMap<>();
+                    paths.stream().filter(models::containsKey)
+                            .forEach(path -> entries.put(path, toPomEntry(path, -1, models.get(path))));
+                    return entries;
+                },
+                directory -> moduleDiscovery.walk(models, directory));
+        buildModuleGraph();
+    }
+
+    private void buildModuleGraph() {
+        runReport.time("graph-build", () -> {
+            moduleDirectories = findModuleDirectories(pomEntries.values());
+            modules = new HashMap<>();
+            buildDependencyGraph();
+            printDependencyList("Dependencies as declared");
+            replaceChildModuleDependenciesWithParentModuleDependencies();
+            printDependencyList("Dependencies on nested modules replaced by their top-level module");
+            return null;
+        });
+    }
+
+    public Map<String, PomEntry> getPomEntries() {
+        return Collections.unmodifiableMap(pomEntries);
+    }
+
+    public ModuleGraph getModuleGraph() {
+        return moduleGraph;
     }
 
     private void replaceChildModuleDependenciesWithParentModuleDependencies() {
+        Map<Module, Module> parents = findParentModules();
+        Map<Module, Set<Module>> dependencies = new HashMap<>();
+        Map<Module, Set<Module>> testJarUsers = new HashMap<>();
         modules.forEach((moduleName, moduleInfo) -> {
-            List<Module> toBeRemoved = new ArrayList<>();
-            List<Module> toBeAdded = new ArrayList<>();
-            for (var child : moduleInfo.dependencies) {
-                var parent = findModuleContainingChild(child);
-                if (parent.isPresent()) {
-                    toBeRemoved.add(child);
-                    toBeAdded.add(parent.get());
+            Set<Module> replaced = new HashSet<>();
+            for (var dependency : moduleInfo.dependencies) {
+                replaced.add(parents.getOrDefault(dependency, dependency));
+            }
+            moduleInfo.dependencies.clear();
+            moduleInfo.dependencies.addAll(replaced);
+            dependencies.put(moduleName, moduleInfo.dependencies);
+            for (var dependency : moduleInfo.testJarDependencies) {
+                Module producer = parents.getOrDefault(dependency, dependency);
+                if (!producer.equals(moduleName)) {
+                    testJarUsers.computeIfAbsent(producer, key -> new HashSet<>()).add(moduleName);
                 }
             }
-            moduleInfo.dependencies.addAll(toBeAdded);
-            moduleInfo.dependencies.removeAll(toBeRemoved);
         });
+        testJarDependents = testJarUsers;
+        moduleGraph = new ModuleGraph(dependencies, parents);
     }
 
-    @SneakyThrows
-    private void buildDependencyGraph(File pomFile) {
-        MavenXpp3Reader reader = new MavenXpp3Reader();
-        Model topLevelPomModel = reader.read(new FileReader(pomFile));
-
-        if (topLevelPomModel.getModules() != null) {
-            for (String subModule : topLevelPomModel.getModules()) {
-                File subModulePomFile = new File(pomFile.getParentFile(), subModule + File.separator + "pom.xml");
-                Model subModuleModel = reader.read(new FileReader(subModulePomFile));
-
-                var dependencies = findAllDependencies(subModulePomFile, topLevelPomModel);
-                // if submodule is a pom find all children
-                Set<Module> children = new HashSet<>();
-                if (subModuleModel.getPackaging().equals("pom")) {
-                    children = findAllChildren(subModulePomFile, dependencies);
-                }
-                var groupId = getGroupId(subModuleModel);
-                modules.put(new Module(groupId, subModuleModel.getArtifactId())
-                        , new SubModuleInfo(new Module(groupId, subModuleModel.getArtifactId())
-                                , dependencies, children));
+    // Maps every child to the top-level module containing it; a module that contains itself wins
+    private Map<Module, Module> findParentModules() {
+        Map<Module, Module> parents = new HashMap<>();
+        modules.forEach((moduleName, moduleInfo) -> {
+            if (moduleInfo.children.contains(moduleName)) {
+                parents.put(moduleName, moduleName);
+            }
+        });
+        modules.keySet().stream()
+                .sorted(Comparator.comparing(Module::artifactId).thenComparing(Module::groupId))
+                .forEach(moduleName -> modules.get(moduleName).children
+                        .forEach(child -> parents.putIfAbsent(child, moduleName)));
+        return parents;
+    }
+
+    private void buildDependencyGraph() {
+        PomEntry topLevelPom = pomEntries.get(ROOT_POM);
+        String topLevelGroupId = topLevelPom.module().groupId();
+
+        for (String subModule : topLevelPom.modules()) {
+            PomEntry subModulePom = pomEntries.get(subModulePomPath(subModule));
+            if (subModulePom == null) {
+                continue;
+            }
+            boolean isPom = subModulePom.packaging().equals("pom");
+            Collection<PomEntry> subtree = isPom ? subtreeOf(subModulePom).values() : List.of(subModulePom);
+
+            var dependencies = findAllDependencies(subtree, topLevelGroupId, PomEntry::dependencies);
+            var testJarDependencies = findAllDependencies(subtree, topLevelGroupId, PomEntry::testJarDependencies);
+            // if submodule is a pom find all children
+            Set<Module> children = new HashSet<>();
+            if (isPom) {
+                children = findAllChildren(subtree);
+            }
+            modules.put(subModulePom.module(),
+                    new SubModuleInfo(subModulePom.module(), dependencies, testJarDependencies, children));
+        }
+    }
+
+    private NavigableMap<String, PomEntry> subtreeOf(PomEntry pom) {
+        String directory = pom.path().substring(0, pom.path().length() - ROOT_POM.length());
+        return pomEntries.subMap(directory, true, directory + Character.MAX_VALUE, false);
+    }
+
+    private NavigableMap<String, PomEntry> scanPomEntries(File rootPom) {
+        Path rootDirectory = rootPom.getAbsoluteFile().getParentFile().toPath();
+        PomEntry topLevelPom = toPomEntries(rootDirectory, List.of(rootPom.toPath())).get(ROOT_POM);
+        return discover(topLevelPom, Map.of(), paths -> readPomEntries(rootDirectory, paths),
+                directory -> moduleDiscovery.walk(rootDirectory, directory));
+    }
+
+    private NavigableMap<String, PomEntry> refreshPomEntries(File rootPom, Map<String, PomEntry> previousEntries,
+                                                             Collection<String> changedPomPaths) {
+        Path rootDirectory = rootPom.getAbsoluteFile().getParentFile().toPath();
+        Map<String, PomEntry> known = new HashMap<>(previousEntries);
+
+        Set<String> stale = new HashSet<>(changedPomPaths);
+        for (PomEntry entry : previousEntries.values()) {
+            if (lastModified(rootDirectory.resolve(entry.path())) != entry.lastModified()) {
+                stale.add(entry.path());
             }
         }
+        stale.forEach(known::remove);
+        // following the declarations again only reads the POMs that changed or were never seen
+        PomEntry topLevelPom = toPomEntries(rootDirectory, List.of(rootPom.toPath())).get(ROOT_POM);
+        return discover(topLevelPom, known, paths -> readPomEntries(rootDirectory, paths),
+                directory -> moduleDiscovery.walk(rootDirectory, directory));
+    }
+
+    /**
+     * Selects the root POM and the POMs of its declared submodules, see {@link ModuleDiscovery}. Entries are
+     * taken from known where present and loaded otherwise.
+     */
+    private NavigableMap<String, PomEntry> discover(PomEntry topLevelPom, Map<String, PomEntry> known,
+                                                    Function<List<String>, Map<String, PomEntry>> load,
+                                                    Function<String, List<String>> walk) {
+        Map<String, PomEntry> available = new HashMap<>(known);
+        int walkedBefore = moduleDiscovery.getDirectoriesWalked();
+        List<String> subModulePoms = topLevelPom.modules().stream()
+                .map(subModule -> ModuleDiscovery.modulePomPath(ROOT_POM, subModule))
+                .filter(Objects::nonNull)
+                .toList();
+        List<String> found = moduleDiscovery.findModulePoms(subModulePoms, paths -> {
+            List<String> missing = paths.stream().filter(path -> !available.containsKey(path)).toList();
+            if (!missing.isEmpty()) {
+                available.putAll(load.apply(missing));
+            }
+            return available;
+        }, walk);
+        runReport.increment("directories-walked", moduleDiscovery.getDirectoriesWalked() - walkedBefore);
+
+        NavigableMap<String, PomEntry> entries = new TreeMap<>();
+        entries.put(ROOT_POM, topLevelPom);
+        found.forEach(path -> entries.put(path, available.get(path)));
+        return entries;
+    }
+
+    private NavigableMap<String, PomEntry> readPomEntries(Path rootDirectory, List<String> paths) {
+        return toPomEntries(rootDirectory, paths.stream()
+                .map(rootDirectory::resolve)
+                .filter(Files::isRegularFile)
+                .toList());
+    }
+
+    private NavigableMap<String, PomEntry> toPomEntries(Path rootDirectory, List<Path> poms) {
+        Map<Path, Model> models = modelCache.getAll(poms);
+        NavigableMap<String, PomEntry> entries = new TreeMap<>();
+        models.forEach((pom, model) -> {
+            String path = relativePath(rootDirectory, pom);
+            entries.put(path, toPomEntry(path, lastModified(pom), model));
+        });
+        return entries;
+    }
+
+    private static PomEntry toPomEntry(String path, long lastModified, Model model) {
+        return new PomEntry(path, lastModified,
+                new Module(getGroupId(model), model.getArtifactId()),
+                model.getPackaging(),
+                ModuleDiscovery.declaredModules(model),
+                model.getDependencies().stream()
+                        .map(DependencyUpdateAnalyzer::getModule)
+                        .collect(Collectors.toSet()),
+                testJarModules(model.getDependencies()));
+    }
+
+    private static String subModulePomPath(String subModule) {
+        return Path.of(subModule, ROOT_POM).normalize().toString().replace(File.separatorChar, '/');
+    }
+
+    private static String relativePath(Path rootDirectory, Path pom) {
+        return rootDirectory.relativize(pom.toAbsolutePath()).normalize().toString().replace(File.separatorChar, '/');
+    }
+
+    @SneakyThrows
+    private static long lastModified(Path pom) {
+        return Files.isRegularFile(pom) ? Files.getLastModifiedTime(pom).toMillis() : -1;
     }
 
     private static String getGroupId(Model model) {
@@ -87,129 +336,120 @@ public class DependencyUpdateAnalyzer {
         return groupId;
     }
 
-    @SneakyThrows
-    private Set<Module> findAllChildren(File subModuleModel, Set<Module> dependencies) {
-        var subModuleDirectory = subModuleModel.getParentFile();
-        // walk down the directory tree to find all pom.xml files using  Files.walk()
-        var subModulePoms = Files.walk(subModuleDirectory.toPath())
-                .filter(Files::isRegularFile)
-                .filter(path -> path.getFileName().toString().equals("pom.xml"))
-                .map(Path::toFile)
-                .toList();
-
+    private static Set<Module> findAllChildren(Collection<PomEntry> subtree) {
         Set<Module> subModuleModels = new HashSet<>();
-        for (var subModulePom : subModulePoms) {
-            MavenXpp3Reader readerx = new MavenXpp3Reader();
-            var subModuleModelx = readerx.read(new FileReader(subModulePom));
-            var groupId = getGroupId(subModuleModelx);
-            var child = new Module(groupId, subModuleModelx.getArtifactId());
-            subModuleModels.add(child);
+        for (var subModulePom : subtree) {
+            subModuleModels.add(subModulePom.module());
         }
         return subModuleModels;
     }
 
-    private void printDependencyList() {
+    // Only rendered with -X, the dump is large for big graphs
+    private void printDependencyList(String title) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        StringBuilder dump = new StringBuilder(title).append(':').append(System.lineSeparator());
         modules.forEach((moduleName, moduleInfo) -> {
-            System.out.println(moduleName + ":");
-            System.out.println("  Dependencies: ");
+            dump.append(moduleName).append(':').append(System.lineSeparator());
+            dump.append("  Dependencies: ").append(System.lineSeparator());
             for (Module dependency : moduleInfo.dependencies) {
-                System.out.println("      -> " + dependency.artifactId);
+                dump.append("      -> ").append(dependency.artifactId).append(System.lineSeparator());
             }
-            System.out.println("  Children: ");
+            dump.append("  Children: ").append(System.lineSeparator());
             for (Module child : moduleInfo.children) {
-                System.out.println("      -> " + child.artifactId);
+                dump.append("      -> ").append(child.artifactId).append(System.lineSeparator());
             }
         });
+        log.debug(dump);
     }
 
-    private Optional<Module> findModuleContainingChild(Module child) {
-        for (var entry : modules.entrySet()) {
-            if(entry.getValue().children.contains(child)) {
-                return Optional.of(entry.getKey());
-            }
-        }
-        return Optional.empty();
-    }
-
-    @SneakyThrows
-    private Set<Module> findAllDependencies(File subModulePomFile, Model topLevelPomModel) {
-        var reader = new MavenXpp3Reader();
-        var subModuleModel = reader.read(new FileReader(subModulePomFile));
-        if (subModuleModel.getPackaging().equals("pom")) {
-            var subModuleDirectory = subModulePomFile.getParentFile();
-            // walk down the directory tree to find all pom.xml files using  Files.walk()
-            var subModulePoms = Files.walk(subModuleDirectory.toPath())
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.getFileName().toString().equals("pom.xml"))
-                    .map(Path::toFile)
-                    .toList();
-
-            List<Model> subModuleModels = new ArrayList<>();
-            for (var subModulePom : subModulePoms) {
-                MavenXpp3Reader readerx = new MavenXpp3Reader();
-                subModuleModels.add(readerx.read(new FileReader(subModulePom)));
-            }
-            var x = subModuleModels.stream()
-                    .map(ModelBase::getDependencies)
-                    .filter(Objects::nonNull)
-                    .map(dependencies -> dependencies.stream()
-                            .map(DependencyUpdateAnalyzer::getModule))
-                    .toList();
-            // filter out only those that match top level pom groupId
-            return x.stream()
-                    .flatMap(Function.identity())
-                    .filter(module -> module.groupId.startsWith(topLevelPomModel.getGroupId()))
-                    .collect(Collectors.toSet());
-        } else {
-            return subModuleModel.getDependencies().stream()
-                    .map(DependencyUpdateAnalyzer::getModule)
-                    .filter(module -> module.groupId.startsWith(topLevelPomModel.getGroupId()))
-                    .collect(Collectors.toSet());
-        }
+    private static Set<Module> findAllDependencies(Collection<PomEntry> subtree, String topLevelGroupId,
+                                                   Function<PomEntry, Set<Module>> declared) {
+        // filter out only those that match top level pom groupId
+        return subtree.stream()
+                .flatMap(pom -> declared.apply(pom).stream())
+                .filter(module -> module.groupId.startsWith(topLevelGroupId))
+                .collect(Collectors.toSet());
     }
 
     private static Module getModule(Dependency dependency) {
         return new Module(dependency.getGroupId(), dependency.getArtifactId());
     }
 
-    public Set<Module> findModulesToUpdate(List<String> changedModules) {
-        Set<Module> modulesToUpdate = new HashSet<>();
-        Queue<Module> queue = new LinkedList<>();
+    private static Set<Module> testJarModules(List<Dependency> dependencies) {
+        return dependencies.stream()
+                .filter(dependency -> "test-jar".equals(dependency.getType())
+                        || "tests".equals(dependency.getClassifier()))
+                .map(DependencyUpdateAnalyzer::getModule)
+                .collect(Collectors.toSet());
+    }
 
-        // Convert changedModules strings to Module objects and add them to the queue
+    // Changed modules are given as module directories relative to the root, or as artifactIds
+    public Set<Module> findModulesToUpdate(List<String> changedModules) {
+        // Convert changedModules strings to Module objects
+        List<Module> changed = new ArrayList<>();
         for (String changedModule : changedModules) {
-            modules.keySet().stream()
-                    .filter(module -> module.artifactId().equals(changedModule))
-                    .findFirst()
-                    .ifPresent(queue::add);
+            findModule(changedModule).ifPresent(changed::add);
         }
+        return moduleGraph.findAffectedModules(changed);
+    }
 
-        while (!queue.isEmpty()) {
-            Module currentModule = queue.poll();
-            modulesToUpdate.add(currentModule);
-
-            // Find all modules that depend on the current module
-            for (Map.Entry<Module, SubModuleInfo> entry : modules.entrySet()) {
-                if (entry.getValue().dependencies().contains(currentModule) && !modulesToUpdate.contains(entry.getKey())) {
-                    queue.add(entry.getKey());
-                }
-            }
+    /**
+     * Same as findModulesToUpdate, except that the changed modules in artifactUnchanged, whose published
+     * artifact is not affected by their changes, are rebuilt without their dependents. Only the modules that
+     * use their test-jar are rebuilt with them, since it may hold the changed tests.
+     */
+    public Set<Module> findModulesToUpdate(List<String> changedModules, Set<String> artifactUnchanged) {
+        Set<Module> modules = new LinkedHashSet<>(findModulesToUpdate(changedModules.stream()
+                .filter(module -> !artifactUnchanged.contains(module))
+                .toList()));
+        artifactUnchanged.forEach(module -> findModule(module).ifPresent(changed -> {
+            modules.add(changed);
+            modules.addAll(testJarDependents.getOrDefault(changed, Set.of()));
+        }));
+        return modules;
+    }
 
-            // Add parent modules if the current module is a child
-            findParentModule(currentModule).ifPresent(parent -> {
-                if (!modulesToUpdate.contains(parent)) {
-                    queue.add(parent);
-                }
-            });
+    // The graph module for a module directory or artifactId; nested modules map to the module containing them
+    public Optional<Module> findModule(String changedModule) {
+        PomEntry pom = pomEntries.get(subModulePomPath(changedModule));
+        if (pom == null) {
+            return moduleGraph.findByArtifactId(changedModule);
         }
+        // nested modules are represented in the graph by the top-level module containing them
+        return moduleGraph.findParentModule(pom.module())
+                .or(() -> Optional.of(pom.module()));
+    }
+
+    // Directory of the module relative to the root, as used for module paths in git
+    public Optional<String> findModuleDirectory(Module module) {
+        return Optional.ofNullable(moduleDirectories.get(module));
+    }
 
-        return modulesToUpdate;
+    // The module directory followed by the directories of the modules nested in it, for use in a -pl list
+    public List<String> findProjectDirectories(Module module) {
+        String directory = moduleDirectories.get(module);
+        PomEntry pom = directory == null ? null : pomEntries.get(subModulePomPath(directory));
+        if (pom == null) {
+            return List.of();
+        }
+        List<String> directories = new ArrayList<>(List.of(directory));
+        subtreeOf(pom).keySet().stream()
+                .map(path -> path.substring(0, path.length() - ROOT_POM.length() - 1))
+                .filter(nested -> !nested.equals(directory))
+                .forEach(directories::add);
+        return directories;
     }
 
-    private Optional<Module> findParentModule(Module childModule) {
-        return modules.entrySet().stream()
-                .filter(entry -> entry.getValue().children().contains(childModule))
-                .map(Map.Entry::getKey)
-                .findFirst();
+    private static Map<Module, String> findModuleDirectories(Collection<PomEntry> poms) {
+        Map<Module, String> directories = new HashMap<>();
+        for (PomEntry pom : poms) {
+            String path = pom.path();
+            if (!path.equals(ROOT_POM)) {
+                directories.putIfAbsent(pom.module(), path.substring(0, path.length() - ROOT_POM.length() - 1));
+            }
+        }
+        return directories;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package uk.anbu.maven.monorepo;
+
+public enum FetchMode {
+    // fetch all branches and tags from the remote, as before
+    FULL,
+    // work offline against local refs only
+    NONE,
+    // fetch only the last-successful-build-* tags
+    TAGS_ONLY,
+    // fetch branches and last-successful-build-* tags limited to a commit depth
+    SHALLOW
+}
@@ -0,0 +1,93 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.execution.BuildSuccess;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.slf4j.LoggerFactory;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Records the fingerprint of every module whose projects were all installed by a successful build, so later
+ * runs can skip modules that are unchanged since. Modules built from uncommitted changes, directly or through
+ * a dependency, are not recorded because their fingerprint would not describe what was built. Only active when
+ * the plugin is declared with {@code <extensions>true</extensions>}.
+ */
+@Named("monorepo-build-fingerprints")
+@Singleton
+public class FingerprintRecorder extends AbstractMavenLifecycleParticipant {
+
+    private static final Set<String> INSTALLING_PHASES = Set.of("install", "deploy");
+
+    private final Slf4jLog log = new Slf4jLog(LoggerFactory.getLogger(FingerprintRecorder.class));
+
+    @Override
+    public void afterSessionEnd(MavenSession session) {
+        MavenProject topLevelProject = session.getTopLevelProject();
+        if (topLevelProject == null || session.getResult() == null
+                || !installsArtifacts(session.getGoals())) {
+            return;
+        }
+        File root = topLevelProject.getBasedir();
+        File stateDirectory = GitHelper.stateDirectory(root);
+        if (!GitHelper.isRepository(root)) {
+            return;
+        }
+
+        Map<String, MavenProject> built = new HashMap<>();
+        for (MavenProject project : session.getProjects()) {
+            if (session.getResult().getBuildSummary(project) instanceof BuildSuccess) {
+                built.put(ModuleTrie.modulePath(root, project.getBasedir()), project);
+            }
+        }
+        GitHelper gitHelper = new GitHelper(log, root);
+        Set<String> uncommitted = gitHelper.uncommittedPaths();
+        if (uncommitted.contains("pom.xml")) {
+            log.debug("Not recording fingerprints, the root pom.xml has uncommitted changes");
+            return;
+        }
+
+        DependencyUpdateAnalyzer analyzer = new DependencyUpdateAnalyzer(new ModelCache(), log, new RunReport());
+        analyzer.buildDependencyGraph(root, session.getAllProjects());
+        Map<Module, String> fingerprints = ModuleFingerprints.compute(gitHelper, analyzer);
+        // what was built from uncommitted changes, and everything built against it, is not what HEAD describes
+        ModuleTrie moduleTrie = ModuleTrie.fromProjects(root, session.getAllProjects());
+        List<String> dirtyModules = uncommitted.stream()
+                .map(moduleTrie::findModule)
+                .flatMap(Optional::stream)
+                .distinct()
+                .toList();
+        Set<Module> tainted = analyzer.findModulesToUpdate(dirtyModules);
+
+        File file = new File(stateDirectory, FingerprintStore.FILE_NAME);
+        FingerprintStore store = FingerprintStore.load(file);
+        int recorded = 0;
+        for (var entry : fingerprints.entrySet()) {
+            List<String> directories = analyzer.findProjectDirectories(entry.getKey());
+            if (!directories.isEmpty() && directories.stream().allMatch(built::containsKey)
+                    && !tainted.contains(entry.getKey())) {
+                MavenProject project = built.get(directories.get(0));
+                store.record(entry.getValue(), new FingerprintStore.Artifact(project.getGroupId(),
+                        project.getArtifactId(), project.getVersion()));
+                recorded++;
+            }
+        }
+        if (recorded > 0) {
+            store.save(file);
+            log.info(String.format("Recorded fingerprints of %d installed modules", recorded));
+        }
+    }
+
+    static boolean installsArtifacts(List<String> goals) {
+        return goals.stream().anyMatch(INSTALLING_PHASES::contains);
+    }
+}
@@ -0,0 +1,103 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers which artifact version was installed for a module fingerprint. A recorded fingerprint only counts
+ * while the artifact is still in the local repository, so wiping the repository never causes a skipped build
+ * to miss its artifact. Only the most recent fingerprints of each module are kept.
+ */
+public class FingerprintStore {
+
+    public static final String FILE_NAME = "fingerprints.tsv";
+
+    private static final int KEPT_PER_MODULE = 20;
+
+    public record Artifact(String groupId, String artifactId, String version) {
+
+        public Module module() {
+            return new Module(groupId, artifactId);
+        }
+
+        @Override
+        public String toString() {
+            return groupId + ":" + artifactId + ":" + version;
+        }
+    }
+
+    // insertion ordered, so the oldest fingerprints of a module come first
+    private final Map<String, Artifact> artifacts = new LinkedHashMap<>();
+
+    public static FingerprintStore load(File file) {
+        FingerprintStore store = new FingerprintStore();
+        if (!file.isFile()) {
+            return store;
+        }
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length == 4) {
+                    store.artifacts.put(fields[0], new Artifact(fields[1], fields[2], fields[3]));
+                }
+            }
+        } catch (IOException e) {
+            // without the store every module is simply built again
+            store.artifacts.clear();
+        }
+        return store;
+    }
+
+    @SneakyThrows
+    public void save(File file) {
+        List<String> lines = new ArrayList<>();
+        artifacts.forEach((fingerprint, artifact) -> lines.add(String.join("\t",
+                fingerprint, artifact.groupId(), artifact.artifactId(), artifact.version())));
+        file.getParentFile().mkdirs();
+        File temporary = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(temporary.toPath(), lines, StandardCharsets.UTF_8);
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void record(String fingerprint, Artifact artifact) {
+        artifacts.remove(fingerprint);
+        artifacts.put(fingerprint, artifact);
+        List<String> ofModule = artifacts.entrySet().stream()
+                .filter(entry -> entry.getValue().module().equals(artifact.module()))
+                .map(Map.Entry::getKey)
+                .toList();
+        for (int i = 0; i < ofModule.size() - KEPT_PER_MODULE; i++) {
+            artifacts.remove(ofModule.get(i));
+        }
+    }
+
+    // The modules whose current fingerprint was recorded for an artifact that is still installed
+    public Map<Module, Artifact> findInstalled(Map<Module, String> fingerprints, File localRepository) {
+        Map<Module, Artifact> installed = new HashMap<>();
+        fingerprints.forEach((module, fingerprint) -> {
+            Artifact artifact = artifacts.get(fingerprint);
+            if (artifact != null && artifact.module().equals(module) && isInstalled(artifact, localRepository)) {
+                installed.put(module, artifact);
+            }
+        });
+        return installed;
+    }
+
+    private static boolean isInstalled(Artifact artifact, File localRepository) {
+        File directory = new File(localRepository, artifact.groupId().replace('.', File.separatorChar)
+                + File.separator + artifact.artifactId() + File.separator + artifact.version());
+        return new File(directory, artifact.artifactId() + "-" + artifact.version() + ".pom").isFile();
+    }
+}
@@ -0,0 +1,73 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.plugin.logging.Log;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Runs the forked {@code versions:set} fallback for many modules, one after the other in build plan order. Each
+ * fork also rewrites the POMs that depend on its module, and the dependents of two modules overlap whenever they
+ * share one, so forks never run concurrently. The first failing fork stops the rest. Every fork inherits the
+ * batch mode, offline and local repository settings of the running build.
+ */
+class ForkedVersionBumper {
+
+    private final Log log;
+    private final GitHelper gitHelper;
+    private final MavenEnvironment mavenEnvironment;
+    private final RunReport runReport;
+
+    ForkedVersionBumper(Log log, GitHelper gitHelper, MavenEnvironment mavenEnvironment, RunReport runReport) {
+        this.log = log;
+        this.gitHelper = gitHelper;
+        this.mavenEnvironment = mavenEnvironment;
+        this.runReport = runReport;
+    }
+
+    // Module directory to its new version, or "skipped" when its version is not a literal
+    Map<String, String> bump(Collection<String> moduleDirectories, DependencyUpdateAnalyzer analyzer) {
+        Map<String, String> newVersions = new TreeMap<>();
+        Map<String, Long> millis = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        for (String directory : schedule(moduleDirectories, analyzer)) {
+            long moduleStart = System.nanoTime();
+            String newVersion = runReport.time("version-bump:" + directory,
+                    () -> gitHelper.incrementRevisionOfSubModule(directory, mavenEnvironment));
+            millis.put(directory, (System.nanoTime() - moduleStart) / 1_000_000);
+            if (newVersion != null) {
+                newVersions.put(directory, newVersion);
+            }
+        }
+
+        millis.entrySet().stream().max(Map.Entry.comparingByValue()).ifPresent(slowest ->
+                log.info(String.format("Forked versions:set for %d modules in %d ms, slowest was %s with %d ms",
+                        millis.size(), (System.nanoTime() - start) / 1_000_000, slowest.getKey(),
+                        slowest.getValue())));
+        return newVersions;
+    }
+
+    // Build plan order, so a module is bumped after the modules it depends on
+    private static List<String> schedule(Collection<String> moduleDirectories, DependencyUpdateAnalyzer analyzer) {
+        Map<Module, List<String>> byModule = new LinkedHashMap<>();
+        List<String> unresolved = new ArrayList<>();
+        for (String directory : new TreeSet<>(moduleDirectories)) {
+            analyzer.findModule(directory).ifPresentOrElse(
+                    module -> byModule.computeIfAbsent(module, key -> new ArrayList<>()).add(directory),
+                    () -> unresolved.add(directory));
+        }
+        List<String> ordered = new ArrayList<>();
+        for (List<Module> wave : BuildPlan.of(analyzer.getModuleGraph(), byModule.keySet()).waves()) {
+            wave.forEach(module -> ordered.addAll(byModule.get(module)));
+        }
+        // without a place in the graph nothing is known about them, so they run last
+        ordered.addAll(unresolved);
+        return ordered;
+    }
+}
@@ -14,176 +14,553 @@ import org.apache.maven.shared.invoker.InvocationRequest;
 import org.apache.maven.shared.invoker.InvocationResult;
 import org.apache.maven.shared.invoker.Invoker;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
-import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.SshSessionFactory;
 import org.eclipse.jgit.transport.SshTransport;
 import org.eclipse.jgit.transport.TagOpt;
 import org.eclipse.jgit.transport.ssh.jsch.JschConfigSessionFactory;
 import org.eclipse.jgit.transport.ssh.jsch.OpenSshConfig;
-import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.jgit.util.FS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 
 public class GitHelper {
 
+    private static final String BUILD_TAG_PREFIX = "last-successful-build-";
+
+    // A shallow history that ends above the last build tag is deepened this many times, doubling each time
+    private static final int MAX_DEEPENINGS = 3;
+
+    private static final Logger SSH_LOG = LoggerFactory.getLogger(GitHelper.class);
+
+    private static SshSessionFactory sshSessionFactory;
+
     private final Log log;
     private final File basedir;
+    private final ChangeDetectionOptions options;
+    private final ModelCache modelCache;
+    private final RunReport runReport;
+    private ModuleTrie moduleTrie;
+    private Map<String, Model> headPomModels;
+    private Repository sharedRepository;
+    private Map<String, Set<ChangeKind>> changeKinds = Map.of();
+    // unchanged module to the modules changed since its baseline that a newer baseline of their own hides
+    private Map<String, Set<String>> hiddenChanges = Map.of();
 
     public GitHelper(Log log, File basedir) {
+        this(log, basedir, ChangeDetectionOptions.builder().build(), new ModelCache(), new RunReport());
+    }
+
+    public GitHelper(Log log, File basedir, ChangeDetectionOptions options, ModelCache modelCache, RunReport runReport) {
         this.log = log;
         this.basedir = basedir;
+        this.options = options;
+        this.modelCache = modelCache;
+        this.runReport = runReport;
     }
 
     private Log getLog() {
         return log;
     }
 
+    // Created once per JVM; building a JSch session factory per call re-reads keys and config every time. It
+    // outlives the mojo that created it, so it logs through slf4j rather than that mojo's Log
+    private static synchronized SshSessionFactory getSshSessionFactory() {
+        if (sshSessionFactory == null) {
+            sshSessionFactory = new JschConfigSessionFactory() {
+                @Override
+                protected void configure(OpenSshConfig.Host host, Session session) {
+                }
+
+                @Override
+                protected JSch createDefaultJSch(FS fs) throws JSchException {
+                    JSch defaultJSch = super.createDefaultJSch(fs);
+                    var homeDir = System.getProperty("user.home");
+                    var idRsa = new File(homeDir, ".ssh/id_rsa");
+                    SSH_LOG.info("Using private key {}", idRsa.getAbsolutePath());
+                    defaultJSch.addIdentity(idRsa.getAbsolutePath());
+                    return defaultJSch;
+                }
+            };
+        }
+        return sshSessionFactory;
+    }
+
     @SneakyThrows
     public List<String> changedModuleList() {
         List<String> changedModules;
-        final SshSessionFactory sshSessionFactory = new JschConfigSessionFactory() {
-            @Override
-            protected void configure(OpenSshConfig.Host host, Session session) {
-            }
-
-            @Override
-            protected JSch createDefaultJSch(FS fs) throws JSchException {
-                JSch defaultJSch = super.createDefaultJSch(fs);
-                var homeDir = System.getProperty("user.home");
-                var idRsa = new File(homeDir, ".ssh/id_rsa");
-                getLog().info(String.format("Using private key %s", idRsa.getAbsolutePath()));
-                defaultJSch.addIdentity(idRsa.getAbsolutePath());
-                return defaultJSch;
-            }
-        };
         getLog().info("Using basedir: " + basedir);
 
-        Repository repository = new FileRepositoryBuilder()
-                .setGitDir(new File(basedir, ".git"))
-                .build();
-
-        try (Git git = new Git(repository)) {
-            var fetchCommand = git.fetch();
-            fetchCommand.setTransportConfigCallback(transport -> {
-                SshTransport sshTransport = (SshTransport) transport;
-                sshTransport.setSshSessionFactory(sshSessionFactory);
+        try (Repository repository = openRepository();
+             Git git = new Git(repository)) {
+            runReport.time("fetch", () -> {
+                fetch(git);
+                return null;
             });
 
-            // Fetch all remote tags
-            fetchCommand.setTagOpt(TagOpt.FETCH_TAGS)
-                    .setTransportConfigCallback(transport -> {
-                        SshTransport sshTransport = (SshTransport) transport;
-                        sshTransport.setSshSessionFactory(sshSessionFactory);
-                    })
-                    .call();
-
             // Find the last commit with prefix 'last-successful-build-'
-            RevCommit lastSuccessfulBuildCommit = findLastSuccessfulBuildCommit(git);
+            RevCommit lastSuccessfulBuildCommit = runReport.time("baseline-lookup", () -> findLastSuccessfulBuildCommit(git));
+            Map<String, ObjectId> moduleBaselines = runReport.time("module-baselines",
+                    () -> new ModuleBaselines(repository).read());
 
-            if (lastSuccessfulBuildCommit == null) {
+            if (lastSuccessfulBuildCommit == null && moduleBaselines.isEmpty()) {
                 getLog().warn("No commit found with prefix 'last-successful-build-'");
                 return null;
             }
 
             // Find changed submodules
-            changedModules = findChangedModules(git, lastSuccessfulBuildCommit);
+            changedModules = runReport.time("diff",
+                    () -> findChangedModules(repository, lastSuccessfulBuildCommit, moduleBaselines));
         }
         return changedModules;
     }
 
-    private RevCommit findLastSuccessfulBuildCommit(Git git) throws GitAPIException, IOException {
-        final String PREFIX = "last-successful-build-";
-        RevCommit lastSuccessfulBuildCommit = null;
-        RevWalk walk = new RevWalk(git.getRepository());
+    // Fetches as the options say without looking for changes, for processes that fetch on their own schedule
+    @SneakyThrows
+    public void fetch() {
+        try (Repository repository = openRepository();
+             Git git = new Git(repository)) {
+            runReport.time("fetch", () -> {
+                fetch(git);
+                return null;
+            });
+        }
+    }
 
-        try {
-            List<Ref> tags = git.tagList().call();
+    private void fetch(Git git) throws GitAPIException {
+        fetch(git, options.getFetchDepth());
+    }
 
-            getLog().info("Found " + tags.size() + " tags");
-            for (Ref tag : tags) {
-                String tagName = tag.getName();
-                getLog().info(String.format("Found tag %s", tagName));
-                if (tagName.startsWith("refs/tags/" + PREFIX)) {
-                    RevCommit commit = walk.parseCommit(tag.getObjectId());
+    private void fetch(Git git, int depth) throws GitAPIException {
+        FetchMode fetchMode = options.getFetchMode();
+        if (fetchMode == FetchMode.NONE) {
+            getLog().info("Fetch disabled, using local refs only");
+            return;
+        }
 
-                    if (lastSuccessfulBuildCommit == null || commit.getCommitTime() > lastSuccessfulBuildCommit.getCommitTime()) {
-                        lastSuccessfulBuildCommit = commit;
+        var fetchCommand = git.fetch()
+                .setTransportConfigCallback(transport -> {
+                    if (transport instanceof SshTransport sshTransport) {
+                        sshTransport.setSshSessionFactory(getSshSessionFactory());
                     }
+                });
+        RefSpec buildTags = new RefSpec(String.format("+refs/tags/%s*:refs/tags/%s*", BUILD_TAG_PREFIX, BUILD_TAG_PREFIX));
+        switch (fetchMode) {
+            // Fetch all remote tags
+            case FULL -> fetchCommand.setTagOpt(TagOpt.FETCH_TAGS);
+            case TAGS_ONLY -> fetchCommand.setTagOpt(TagOpt.NO_TAGS)
+                    .setRefSpecs(buildTags);
+            case SHALLOW -> {
+                String[] configured = git.getRepository().getConfig().getStringList("remote", "origin", "fetch");
+                List<RefSpec> refSpecs = new ArrayList<>();
+                if (configured.length == 0) {
+                    refSpecs.add(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
                 }
+                Arrays.stream(configured).map(RefSpec::new).forEach(refSpecs::add);
+                refSpecs.add(buildTags);
+                fetchCommand.setTagOpt(TagOpt.NO_TAGS)
+                        .setRefSpecs(refSpecs)
+                        .setDepth(depth);
             }
-        } finally {
-            walk.dispose();
+            default -> throw new IllegalStateException("Unsupported fetch mode " + fetchMode);
         }
+        getLog().info("Fetching from remote, mode " + fetchMode);
+        fetchCommand.call();
+    }
 
-        if (lastSuccessfulBuildCommit != null) {
-            getLog().info("Found last successful build commit: " + lastSuccessfulBuildCommit.getName());
-        } else {
-            getLog().warn("No commit found with prefix '" + PREFIX + "'");
+    private synchronized Repository openRepository() throws IOException {
+        if (sharedRepository != null) {
+            // closed by the caller like any other, the extra reference keeps it open
+            sharedRepository.incrementOpen();
+            return sharedRepository;
+        }
+        return new FileRepositoryBuilder()
+                .setGitDir(gitDirectory(basedir))
+                .build();
+    }
+
+    /**
+     * Keeps a single repository open for all later calls instead of opening one per call, so refs, packs and
+     * their indexes stay loaded. Meant for long-lived processes such as {@link MonorepoDaemon}.
+     */
+    @SneakyThrows
+    public synchronized void keepRepositoryOpen() {
+        if (sharedRepository == null) {
+            sharedRepository = openRepository();
         }
+    }
 
-        return lastSuccessfulBuildCommit;
+    /**
+     * Modules changed between the given revision and HEAD, comparing every module against that revision instead
+     * of its baseline.
+     */
+    @SneakyThrows
+    public List<String> changedModulesSince(String revision) {
+        try (Repository repository = openRepository();
+             RevWalk walk = new RevWalk(repository)) {
+            ObjectId since = repository.resolve(revision);
+            if (since == null) {
+                throw new IllegalArgumentException("Unknown revision " + revision);
+            }
+            RevCommit commit = walk.parseCommit(since);
+            return runReport.time("diff", () -> findChangedModules(repository, commit, Map.of()));
+        }
+    }
+
+    /**
+     * Modules changed on the head of every pair since its merge base with the base, after one fetch, see
+     * {@link PairChangeDetector}.
+     */
+    @SneakyThrows
+    public List<PairChangeDetector.Result> changedModulesOfPairs(List<PairChangeDetector.Pair> pairs) {
+        try (Repository repository = openRepository();
+             Git git = new Git(repository)) {
+            runReport.time("fetch", () -> {
+                fetch(git);
+                return null;
+            });
+            var detector = new PairChangeDetector(repository, new ModuleChangeDetector(getLog(), getModuleTrie(),
+                    options.getOutsideModuleTriggers(),
+                    options.isClassifyChanges() ? new ChangeClassifier(options.getChangeKindRules()) : null));
+            List<PairChangeDetector.Result> results = runReport.time("diff", () -> detector.detect(pairs));
+            runReport.increment("merge-bases", detector.getMergeBasesComputed());
+            runReport.increment("tree-diffs", detector.getTreeDiffsComputed());
+            runReport.increment("diff-entries", detector.getEntriesCompared());
+            getLog().info(String.format("Compared %d pairs with %d distinct merge bases in %d tree diffs",
+                    pairs.size(), detector.getMergeBasesComputed(), detector.getTreeDiffsComputed()));
+            return results;
+        }
     }
 
-    private List<String> findChangedModules(Git git, RevCommit sinceCommit) throws GitAPIException, IOException, MojoExecutionException, org.codehaus.plexus.util.xml.pull.XmlPullParserException {
-        Set<String> changedModules = new HashSet<>();
+    // Working files of the plugin that should survive 'mvn clean'
+    public File getStateDirectory() {
+        return stateDirectory(basedir);
+    }
 
-        ObjectReader reader = git.getRepository().newObjectReader();
-        CanonicalTreeParser oldTreeIter = new CanonicalTreeParser();
-        CanonicalTreeParser newTreeIter = new CanonicalTreeParser();
+    // Plugin state lives inside .git so that it survives mvn clean and is never committed
+    public static File stateDirectory(File basedir) {
+        return new File(gitDirectory(basedir), "monorepo-build");
+    }
 
-        try {
-            ObjectId oldTree = sinceCommit.getTree().getId();
-            ObjectId newTree = git.getRepository().resolve("HEAD^{tree}");
+    // basedir/.git for a working tree, basedir itself for a bare repository
+    public static File gitDirectory(File basedir) {
+        File gitDirectory = RepositoryCache.FileKey.resolve(basedir, FS.DETECTED);
+        return gitDirectory != null ? gitDirectory : new File(basedir, ".git");
+    }
 
-            oldTreeIter.reset(reader, oldTree);
-            newTreeIter.reset(reader, newTree);
+    public static boolean isRepository(File basedir) {
+        return RepositoryCache.FileKey.isGitRepository(gitDirectory(basedir), FS.DETECTED);
+    }
 
-            List<DiffEntry> diffs = git.diff()
-                    .setNewTree(newTreeIter)
-                    .setOldTree(oldTreeIter)
-                    .call();
+    @SneakyThrows
+    public String headCommitId() {
+        try (Repository repository = openRepository()) {
+            ObjectId head = repository.resolve("HEAD");
+            return head == null ? null : head.getName();
+        }
+    }
 
-            for (DiffEntry diff : diffs) {
-                String path = diff.getNewPath();
-                if (diff.getChangeType() == DiffEntry.ChangeType.DELETE) {
-                    path = diff.getOldPath();
+    // Object ids at HEAD of the given paths relative to the root; paths missing at HEAD are left out
+    @SneakyThrows
+    public Map<String, ObjectId> headObjectIds(Collection<String> paths) {
+        Map<String, ObjectId> ids = new HashMap<>();
+        try (Repository repository = openRepository();
+             RevWalk walk = new RevWalk(repository)) {
+            ObjectId head = repository.resolve("HEAD");
+            if (head == null) {
+                return ids;
+            }
+            RevTree headTree = walk.parseCommit(head).getTree();
+            for (String path : paths) {
+                try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, headTree)) {
+                    if (treeWalk != null) {
+                        ids.put(path, treeWalk.getObjectId(0));
+                    }
                 }
+            }
+        }
+        return ids;
+    }
 
-                String module = findModule(path);
-                if (module != null) {
-                    changedModules.add(module);
+    // Moves the baselines of the given modules to HEAD after they built successfully
+    @SneakyThrows
+    public void advanceModuleBaselines(Collection<String> modules) {
+        try (Repository repository = openRepository()) {
+            ObjectId head = repository.resolve("HEAD");
+            if (head != null && !modules.isEmpty()) {
+                new ModuleBaselines(repository).advance(modules, head);
+            }
+        }
+    }
+
+    // Paths relative to the root that differ from HEAD in the working tree, untracked files included
+    public Set<String> uncommittedPaths() {
+        return uncommittedPaths(List.of());
+    }
+
+    // As uncommittedPaths(), only looking below the given directories, or everywhere if none are given
+    @SneakyThrows
+    public Set<String> uncommittedPaths(Collection<String> directories) {
+        try (Repository repository = openRepository();
+             Git git = new Git(repository)) {
+            var command = git.status();
+            directories.forEach(command::addPath);
+            Status status = command.call();
+            Set<String> paths = new HashSet<>(status.getUncommittedChanges());
+            paths.addAll(status.getUntracked());
+            return paths;
+        }
+    }
+
+    /**
+     * Lists the pom.xml files added, modified or deleted between the given commit and HEAD, or null when that
+     * commit is no longer available.
+     */
+    @SneakyThrows
+    public List<String> changedPomPaths(String sinceCommitId) {
+        try (Repository repository = openRepository();
+             TreeWalk treeWalk = new TreeWalk(repository)) {
+            ObjectId since = repository.resolve(sinceCommitId + "^{tree}");
+            ObjectId head = repository.resolve("HEAD^{tree}");
+            if (since == null || head == null) {
+                return null;
+            }
+            treeWalk.addTree(since);
+            treeWalk.addTree(head);
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(AndTreeFilter.create(TreeFilter.ANY_DIFF, PathSuffixFilter.create("/pom.xml")));
+            List<String> paths = new ArrayList<>();
+            while (treeWalk.next()) {
+                paths.add(treeWalk.getPathString());
+            }
+            // the suffix filter needs the leading slash, so the root pom is checked separately
+            try (TreeWalk rootWalk = TreeWalk.forPath(repository, "pom.xml", since, head)) {
+                if (rootWalk != null && !rootWalk.idEqual(0, 1)) {
+                    paths.add("pom.xml");
                 }
             }
-        } finally {
-            reader.close();
+            return paths;
+        } catch (MissingObjectException e) {
+            return null;
+        }
+    }
+
+    private RevCommit findLastSuccessfulBuildCommit(Git git) throws IOException, GitAPIException {
+        Repository repository = git.getRepository();
+        var locator = new BaselineLocator(getLog(), repository, BUILD_TAG_PREFIX,
+                options.isCacheBaseline() ? getStateDirectory() : null);
+        Optional<ObjectId> baseline = locator.findBaseline(repository.resolve("HEAD"));
+        runReport.increment("tags-scanned", locator.getTagsScanned());
+        // build tags exist but the shallow history ends before reaching one, so nothing is known about changes
+        int depth = options.getFetchDepth();
+        for (int deepenings = 0; baseline.isEmpty() && locator.getTagsScanned() > 0
+                && !repository.getObjectDatabase().getShallowCommits().isEmpty(); deepenings++) {
+            if (options.getFetchMode() != FetchMode.SHALLOW || deepenings == MAX_DEEPENINGS) {
+                throw new IllegalStateException(String.format("None of the %d build tags is reachable from HEAD "
+                                + "in the shallow history of %s. Raise monorepo.fetchDepth (%d) with monorepo.fetchMode "
+                                + "SHALLOW, use monorepo.fetchMode FULL, or deepen the clone",
+                        locator.getTagsScanned(), basedir, options.getFetchDepth()));
+            }
+            depth *= 2;
+            getLog().info("No build tag in the shallow history, deepening the fetch to " + depth + " commits");
+            fetch(git, depth);
+            baseline = locator.findBaseline(repository.resolve("HEAD"));
+            runReport.increment("fetch-deepenings", 1);
+        }
+        if (baseline.isEmpty()) {
+            getLog().warn("No commit found with prefix '" + BUILD_TAG_PREFIX + "'");
+            return null;
         }
 
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit lastSuccessfulBuildCommit = walk.parseCommit(baseline.get());
+            getLog().info("Found last successful build commit: " + lastSuccessfulBuildCommit.getName());
+            return lastSuccessfulBuildCommit;
+        }
+    }
+
+    /**
+     * Compares every module against its own baseline, falling back to the last successful build for modules
+     * without one. Modules sharing a baseline are compared in a single tree walk, and all walks share one
+     * reader and RevWalk.
+     */
+    private List<String> findChangedModules(Repository repository, RevCommit lastSuccessfulBuildCommit,
+                                            Map<String, ObjectId> moduleBaselines) throws IOException {
+        ModuleTrie trie = getModuleTrie();
+        Set<String> changedModules = new LinkedHashSet<>();
+        Map<ObjectId, List<String>> modulesByBaseline = new LinkedHashMap<>();
+        for (String module : trie.getAllModules()) {
+            ObjectId baseline = moduleBaselines.getOrDefault(module, lastSuccessfulBuildCommit);
+            if (baseline == null) {
+                // never built successfully, as far as we know
+                changedModules.add(module);
+            } else {
+                modulesByBaseline.computeIfAbsent(baseline, commit -> new ArrayList<>()).add(module);
+            }
+        }
+        getLog().info(String.format("Comparing %d modules against %d baselines",
+                trie.getAllModules().size(), modulesByBaseline.size()));
+
+        Map<String, Set<ChangeKind>> kinds = new HashMap<>();
+        Map<List<String>, Set<String>> differingByGroup = new HashMap<>();
+        // without knowing what changed, a module is assumed to publish a different artifact
+        changedModules.forEach(module -> kinds.put(module, EnumSet.of(ChangeKind.OTHER)));
+        try (ObjectReader reader = repository.newObjectReader();
+             RevWalk walk = new RevWalk(reader)) {
+            ObjectId newTree = repository.resolve("HEAD^{tree}");
+            var detector = new ModuleChangeDetector(getLog(), trie, options.getOutsideModuleTriggers(),
+                    options.isClassifyChanges() ? new ChangeClassifier(options.getChangeKindRules()) : null);
+            for (var entry : modulesByBaseline.entrySet()) {
+                ObjectId oldTree;
+                try {
+                    oldTree = walk.parseCommit(entry.getKey()).getTree().getId();
+                } catch (MissingObjectException e) {
+                    getLog().warn("Baseline " + entry.getKey().getName() + " is not available, treating "
+                            + entry.getValue().size() + " modules as changed");
+                    changedModules.addAll(entry.getValue());
+                    entry.getValue().forEach(module -> kinds.put(module, EnumSet.of(ChangeKind.OTHER)));
+                    continue;
+                }
+                Set<String> differing = detector.findChangedModules(reader, oldTree, newTree);
+                runReport.increment("diff-entries", detector.getEntriesCompared());
+                differingByGroup.put(entry.getValue(), differing);
+                for (String module : entry.getValue()) {
+                    if (differing.contains(module)) {
+                        changedModules.add(module);
+                        kinds.put(module, detector.getChangeKinds().getOrDefault(module, EnumSet.of(ChangeKind.OTHER)));
+                    }
+                }
+            }
+        }
+        changeKinds = options.isClassifyChanges() ? kinds : Map.of();
+
+        // a module that differs from an older baseline but not from its own was built after the older one
+        Map<String, Set<String>> hidden = new HashMap<>();
+        differingByGroup.forEach((modules, differing) -> {
+            Set<String> hiddenSinceBaseline = new LinkedHashSet<>(differing);
+            hiddenSinceBaseline.removeAll(changedModules);
+            if (!hiddenSinceBaseline.isEmpty()) {
+                modules.stream()
+                        .filter(module -> !changedModules.contains(module))
+                        .forEach(module -> hidden.put(module, hiddenSinceBaseline));
+            }
+        });
+        hiddenChanges = hidden;
         return new ArrayList<>(changedModules);
     }
 
-    private String findModule(String path) {
-        String[] parts = path.split("/");
-        if (parts.length > 0) {
-            return parts[0];  // Assumes top-level directories are modules
+    // True if modules may have to be added to the changed ones by withModulesBehindDependencies
+    public boolean hasHiddenChanges() {
+        return !hiddenChanges.isEmpty();
+    }
+
+    /**
+     * Adds the modules that are unchanged against their own baseline but depend on a module that changed since,
+     * and whose own newer baseline hides that change. This happens when a module failed while its dependency
+     * built and advanced. The added module was never built against the dependency as it is now.
+     */
+    public List<String> withModulesBehindDependencies(List<String> changedModules,
+                                                      DependencyUpdateAnalyzer analyzer) {
+        if (hiddenChanges.isEmpty()) {
+            return changedModules;
         }
-        return null;
+        Set<String> result = new LinkedHashSet<>(changedModules);
+        Map<Set<String>, Set<Module>> affectedByHidden = new HashMap<>();
+        hiddenChanges.forEach((module, hidden) -> {
+            Set<Module> affected = affectedByHidden.computeIfAbsent(hidden,
+                    modules -> analyzer.findModulesToUpdate(new ArrayList<>(modules)));
+            if (analyzer.findModule(module).filter(affected::contains).isPresent() && result.add(module)) {
+                getLog().info(String.format("%s depends on changes made since its baseline, in %s",
+                        module, String.join(", ", hidden)));
+                if (options.isClassifyChanges()) {
+                    changeKinds.put(module, EnumSet.of(ChangeKind.OTHER));
+                }
+            }
+        });
+        return new ArrayList<>(result);
+    }
+
+    // Kinds of the changes per changed module found by changedModuleList, empty when changes are not classified
+    public Map<String, Set<ChangeKind>> getChangeKinds() {
+        return changeKinds;
+    }
+
+    // Changed modules whose changes, e.g. to tests or docs only, leave their published artifact as it was
+    public Set<String> findArtifactUnchangedModules() {
+        Set<String> modules = new LinkedHashSet<>();
+        changeKinds.forEach((module, kinds) -> {
+            if (kinds.stream().noneMatch(ChangeKind::affectsArtifact)) {
+                modules.add(module);
+            }
+        });
+        return modules;
+    }
+
+    // Lets callers that already know the modules, e.g. from the reactor, skip reading the POMs
+    public void setModuleTrie(ModuleTrie moduleTrie) {
+        this.moduleTrie = moduleTrie;
+    }
+
+    private ModuleTrie getModuleTrie() {
+        if (moduleTrie == null) {
+            if (options.isReadFromGit()) {
+                moduleTrie = ModuleTrie.fromModels(basedir, headPomModels());
+            } else {
+                int parsedBefore = modelCache.getParsedCount();
+                moduleTrie = ModuleTrie.fromDeclaredModules(new File(basedir, "pom.xml"), modelCache);
+                runReport.increment("poms-parsed", modelCache.getParsedCount() - parsedBefore);
+            }
+        }
+        return moduleTrie;
+    }
+
+    /**
+     * Every pom.xml of the HEAD commit by its path relative to the root, read from the object database rather
+     * than the working tree. Works on bare and blob-filtered clones, see {@link HeadTreePoms}.
+     */
+    @SneakyThrows
+    public synchronized Map<String, Model> headPomModels() {
+        if (headPomModels == null) {
+            try (Repository repository = openRepository()) {
+                headPomModels = runReport.time("head-poms", () -> new HeadTreePoms(repository, getLog()).read());
+            }
+            runReport.increment("poms-parsed", headPomModels.size());
+        }
+        return headPomModels;
     }
 
     @SneakyThrows
@@ -199,25 +576,55 @@ public class GitHelper {
             return "skipped";
         }
 
+        // forks may run concurrently, so their output is only shown, in one piece, when they fail
+        List<String> output = Collections.synchronizedList(new ArrayList<>());
+        request.get().setOutputHandler(output::add);
+        request.get().setErrorHandler(output::add);
         Invoker invoker = new DefaultInvoker();
         InvocationResult result = invoker.execute(request.get());
         if (result.getExitCode() != 0) {
+            getLog().error(String.join(System.lineSeparator(), output));
             if (result.getExecutionException() != null) {
                 throw new MojoExecutionException("Failed to increment version for module: " + moduleName, result.getExecutionException());
             } else {
                 throw new MojoExecutionException("Failed to increment version for module: " + moduleName + ". Exit code: " + result.getExitCode());
             }
         }
-
-        MavenXpp3Reader reader = new MavenXpp3Reader();
-        Model model = reader.read(new FileReader(new File(moduleDir, "pom.xml")));
-        return model.getVersion();
+        return request.get().getProperties().getProperty("newVersion");
     }
 
+    // Empty when the module has no version of its own that can be incremented, which is logged
     @SneakyThrows
-    private static Optional<InvocationRequest> getInvocationRequest(File moduleDir, MavenEnvironment mavenEnvironment) {
-        InvocationRequest request = new DefaultInvocationRequest();
+    private Optional<InvocationRequest> getInvocationRequest(File moduleDir, MavenEnvironment mavenEnvironment) {
         File pomFile = new File(moduleDir, "pom.xml");
+        if (!pomFile.isFile()) {
+            getLog().warn("No pom.xml in " + moduleDir.getAbsolutePath() + ", not incrementing its version");
+            return Optional.empty();
+        }
+
+        // Read the current version from the POM file
+        Model model;
+        try (var fileReader = new FileReader(pomFile)) {
+            model = new MavenXpp3Reader().read(fileReader);
+        }
+        String currentVersion = model.getVersion();
+        if (currentVersion == null) {
+            getLog().warn("No version in " + pomFile + ", not incrementing its version");
+            return Optional.empty();
+        }
+        if (currentVersion.startsWith("${")) {
+            return Optional.empty();
+        }
+
+        // 1.2.3 becomes 1.2.4, and other versions such as 1.0-SNAPSHOT or 2.1 have their last number incremented
+        var newVersion = PomVersionRewriter.nextModuleVersion(currentVersion);
+        if (newVersion.isEmpty()) {
+            getLog().warn(String.format("Cannot tell the version after %s in %s, not incrementing it",
+                    currentVersion, pomFile));
+            return Optional.empty();
+        }
+
+        InvocationRequest request = new DefaultInvocationRequest();
         request.setPomFile(pomFile);
         request.addArg("versions:set");
 
@@ -230,25 +637,12 @@ public class GitHelper {
 
         request.setMavenHome(new File(mavenHome));
         request.setLocalRepositoryDirectory(new File(mavenRepo));
-
-        // Read the current version from the POM file
-        MavenXpp3Reader reader = new MavenXpp3Reader();
-        Model model = reader.read(new FileReader(pomFile));
-        String currentVersion = model.getVersion();
-        if (currentVersion.startsWith("${")) {
-            return Optional.empty();
-        }
-
-        // Parse the version and increment the patch number
-        String[] versionParts = currentVersion.split("\\.");
-        int major = Integer.parseInt(versionParts[0]);
-        int minor = Integer.parseInt(versionParts[1]);
-        int patch = Integer.parseInt(versionParts[2]);
-        String newVersion = String.format("%d.%d.%d", major, minor, patch + 1);
+        request.setBatchMode(true);
+        request.setOffline(mavenEnvironment.isOffline());
 
         // Set the new version
         Properties properties = new Properties();
-        properties.setProperty("newVersion", newVersion);
+        properties.setProperty("newVersion", newVersion.get());
         properties.setProperty("generateBackupPoms", "false");
         request.setProperties(properties);
 
@@ -0,0 +1,126 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads every pom.xml of the HEAD commit straight from the object database, so the dependency graph can be
+ * built from a bare clone without a checkout. Only trees are walked; in a partial clone the pom.xml blobs that
+ * are not present yet are fetched from the promisor remote in one batch, and no other blob is ever needed.
+ */
+class HeadTreePoms {
+
+    private static final String POM = "pom.xml";
+
+    private final Repository repository;
+    private final Log log;
+
+    HeadTreePoms(Repository repository, Log log) {
+        this.repository = repository;
+        this.log = log;
+    }
+
+    // pom.xml path relative to the root to its model, empty when HEAD has no commit yet
+    Map<String, Model> read() throws IOException {
+        ObjectId headTree = repository.resolve("HEAD^{tree}");
+        if (headTree == null) {
+            return Map.of();
+        }
+        try (ObjectReader reader = repository.newObjectReader()) {
+            Map<String, ObjectId> blobs = findPomBlobs(reader, headTree);
+            List<ObjectId> missing = new ArrayList<>();
+            for (ObjectId blob : blobs.values()) {
+                if (!reader.has(blob)) {
+                    missing.add(blob);
+                }
+            }
+            if (!missing.isEmpty()) {
+                fetchBlobs(missing);
+            }
+
+            Map<String, Model> models = new TreeMap<>();
+            MavenXpp3Reader pomReader = new MavenXpp3Reader();
+            for (var entry : blobs.entrySet()) {
+                try (InputStream in = reader.open(entry.getValue()).openStream()) {
+                    models.put(entry.getKey(), pomReader.read(in, false));
+                } catch (XmlPullParserException e) {
+                    // e.g. test fixtures; a module POM that cannot be read is missing from the graph either way
+                    log.debug("Ignoring unreadable " + entry.getKey() + ": " + e.getMessage());
+                }
+            }
+            return models;
+        }
+    }
+
+    private static Map<String, ObjectId> findPomBlobs(ObjectReader reader, ObjectId headTree) throws IOException {
+        Map<String, ObjectId> blobs = new LinkedHashMap<>();
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(headTree);
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathSuffixFilter.create(POM));
+            while (treeWalk.next()) {
+                // the suffix filter also matches e.g. parent-pom.xml
+                if (treeWalk.getNameString().equals(POM)) {
+                    blobs.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+                }
+            }
+        }
+        return blobs;
+    }
+
+    // JGit cannot fetch objects lazily from a promisor remote, so the git command line does what it would do
+    private void fetchBlobs(List<ObjectId> blobs) throws IOException {
+        String remote = promisorRemote();
+        log.info(String.format("Fetching %d pom.xml blobs missing from the partial clone from %s", blobs.size(), remote));
+        Process process = new ProcessBuilder("git", "--git-dir=" + repository.getDirectory().getAbsolutePath(),
+                "-c", "fetch.negotiationAlgorithm=noop", "fetch", remote, "--no-tags", "--no-write-fetch-head",
+                "--recurse-submodules=no", "--filter=blob:none", "--stdin")
+                .redirectErrorStream(true)
+                .start();
+        try (OutputStream stdin = process.getOutputStream()) {
+            for (ObjectId blob : blobs) {
+                stdin.write((blob.name() + '\n').getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("Fetching pom.xml blobs from " + remote + " failed: " + output.trim());
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching pom.xml blobs", e);
+        }
+    }
+
+    private String promisorRemote() {
+        StoredConfig config = repository.getConfig();
+        String remote = config.getString("extensions", null, "partialclone");
+        if (remote != null) {
+            return remote;
+        }
+        return config.getSubsections("remote").stream()
+                .filter(name -> config.getBoolean("remote", name, "promisor", false))
+                .findFirst()
+                .orElse("origin");
+    }
+}
@@ -1,40 +1,33 @@
 package uk.anbu.maven.monorepo;
 
 import lombok.SneakyThrows;
-import org.apache.maven.execution.MavenSession;
-import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
-import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.project.MavenProject;
 import org.apache.maven.settings.Settings;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
 
-import java.io.File;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 @Mojo(name = "increment-changed-module-version", defaultPhase = LifecyclePhase.INITIALIZE)
-public class IncrementChangedModuleVersionMojo extends AbstractMojo {
-
-    @Parameter(property = "project", readonly = true)
-    private MavenProject project;
+public class IncrementChangedModuleVersionMojo extends AbstractMonorepoMojo {
 
     @Parameter(property = "settings")
     private Settings settings;
 
-    @Component
-    private MavenSession session;
-
-    @Parameter(defaultValue = "${project.basedir}", readonly = true)
-    private File basedir;
-
     @Override
     @SneakyThrows
     public void execute() {
+        if (gitDir != null) {
+            throw new MojoExecutionException("increment-changed-module-version rewrites POMs in the working tree "
+                    + "and cannot run against monorepo.gitDir");
+        }
         MavenEnvironment mavenEnvironment = MavenEnvironment.builder()
                 .projectName(project.getName())
                 .projectVersion(project.getVersion())
@@ -51,22 +44,66 @@ public class IncrementChangedModuleVersionMojo extends AbstractMojo {
 
         if (extracted(getLog(), packaging, modules, baseDir)) return;
 
-        List<String> changedModules = new GitHelper(getLog(), basedir).changedModuleList();
-        if (changedModules == null || changedModules.isEmpty()) {
+        ModelCache modelCache = new ModelCache();
+        RunReport runReport = new RunReport();
+        GitHelper gitHelper = newGitHelper(modelCache, runReport);
+        try {
+            incrementChangedModuleVersions(gitHelper, modelCache, runReport, mavenEnvironment);
+        } finally {
+            writeRunReport("increment-changed-module-version", runReport, gitHelper);
+        }
+    }
+
+    private void incrementChangedModuleVersions(GitHelper gitHelper, ModelCache modelCache, RunReport runReport,
+                                                MavenEnvironment mavenEnvironment) {
+        ChangeAnalysis analysis = analyzeChanges(gitHelper, modelCache, runReport);
+        if (!analysis.hasChanges()) {
             getLog().info("No modules changed since last successful build.");
             return;
         }
 
-        List<String> affectedDependantModules = computeAffectedDependantModules(changedModules);
+        if (!analysis.artifactUnchanged().isEmpty()) {
+            getLog().info("Not incrementing versions of modules with only test or docs changes: "
+                    + analysis.artifactUnchanged());
+        }
+        // their artifacts are the same, so neither they nor their dependents need a new version
+        List<String> changedModules = analysis.propagatingChanges();
+        if (changedModules.isEmpty()) {
+            return;
+        }
+        DependencyUpdateAnalyzer analyzer = analysis.analyzer();
+        Set<Module> affectedModules = computeAffectedDependantModules(analyzer, runReport, changedModules);
+        Set<Module> modulesToUpdate = skipInstalled(affectedModules, gitHelper, analyzer, runReport);
+        // a changed nested module is left alone when the module containing it is unchanged since its last install
+        Set<String> skippedDirectories = affectedModules.stream()
+                .filter(module -> !modulesToUpdate.contains(module))
+                .flatMap(module -> analyzer.findProjectDirectories(module).stream())
+                .collect(Collectors.toSet());
 
         Set<String> allModulesToUpdate = new HashSet<>(changedModules);
-        allModulesToUpdate.addAll(affectedDependantModules);
-
-        for (String module : allModulesToUpdate) {
-            String newVersion = new GitHelper(getLog(), basedir).incrementRevisionOfSubModule(module, mavenEnvironment);
-            getLog().info("Incremented version for module " + module + " to " + newVersion);
+        allModulesToUpdate.removeAll(skippedDirectories);
+        modulesToUpdate.forEach(module ->
+                allModulesToUpdate.add(analyzer.findModuleDirectory(module).orElse(module.artifactId())));
+        if (allModulesToUpdate.isEmpty()) {
+            getLog().info("All changed modules are unchanged since they were last installed.");
+            return;
         }
 
+        var result = runReport.time("version-bump",
+                () -> new PomVersionRewriter(getLog(), basedir, runReport).incrementVersions(allModulesToUpdate));
+        result.newVersions().forEach((module, newVersion) ->
+                getLog().info("Incremented version for module " + module + " to " + newVersion));
+        runReport.increment("modules-bumped", result.newVersions().size());
+
+        // Fall back to forking versions:set for modules the in-place rewriter cannot handle
+        if (!result.unsupported().isEmpty()) {
+            Map<String, String> forkedVersions = runReport.time("version-bump-forked",
+                    () -> new ForkedVersionBumper(getLog(), gitHelper, mavenEnvironment, runReport)
+                            .bump(result.unsupported(), analyzer));
+            forkedVersions.forEach((module, newVersion) ->
+                    getLog().info("Incremented version for module " + module + " to " + newVersion));
+            runReport.increment("modules-bumped", forkedVersions.size());
+        }
     }
 
     public static boolean extracted(Log log, String packaging, List<String> modules, String baseDir) {
@@ -88,16 +125,17 @@ public class IncrementChangedModuleVersionMojo extends AbstractMojo {
         return false;
     }
 
-    private List<String> computeAffectedDependantModules(List<String> changedModules) {
+    private Set<Module> computeAffectedDependantModules(DependencyUpdateAnalyzer analyzer, RunReport runReport,
+                                                        List<String> changedModules) {
         try {
-            DependencyUpdateAnalyzer analyzer = new DependencyUpdateAnalyzer();
-            analyzer.buildDependencyGraph(new File(basedir, "pom.xml").getAbsolutePath());
-            Set<DependencyUpdateAnalyzer.Module> affectedModules = analyzer.findModulesToUpdate(changedModules);
+            Set<Module> affectedModules = runReport.time("affected-set",
+                    () -> analyzer.findModulesToUpdate(changedModules));
+            runReport.increment("modules-affected", affectedModules.size());
 
             getLog().info("Affected dependent modules: " + affectedModules);
-            return affectedModules.stream().map(DependencyUpdateAnalyzer.Module::artifactId).collect(Collectors.toList());
+            return affectedModules;
         } catch (Exception e) {
             throw new RuntimeException("Error computing affected dependent modules", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package uk.anbu.maven.monorepo;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+final class Json {
+
+    private Json() {
+    }
+
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    static String array(Collection<String> values) {
+        return values.stream().map(Json::quote).collect(Collectors.joining(",", "[", "]"));
+    }
+}
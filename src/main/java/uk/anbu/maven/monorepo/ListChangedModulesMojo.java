@@ -1,25 +1,23 @@
 package uk.anbu.maven.monorepo;
 
 import lombok.SneakyThrows;
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.project.MavenProject;
 
-import java.io.File;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 import static uk.anbu.maven.monorepo.IncrementChangedModuleVersionMojo.extracted;
 
-@Mojo(name = "list-changed-modules", defaultPhase = LifecyclePhase.INITIALIZE)
-public class ListChangedModulesMojo extends AbstractMojo {
+@Mojo(name = "list-changed-modules", defaultPhase = LifecyclePhase.INITIALIZE, requiresProject = false)
+public class ListChangedModulesMojo extends AbstractMonorepoMojo {
 
-    @Parameter(defaultValue = "${project.basedir}", readonly = true)
-    private File basedir;
-
-    @Parameter(property = "project", readonly = true)
-    private MavenProject project;
+    // Ask the daemon started with the daemon goal when one is running, see MonorepoDaemon
+    @Parameter(property = "monorepo.useDaemon", defaultValue = "true")
+    private boolean useDaemon = true;
 
     @Override
     @SneakyThrows
@@ -28,9 +26,36 @@ public class ListChangedModulesMojo extends AbstractMojo {
         List<String> modules = project.getModules();
         String baseDir = basedir.getAbsolutePath();
 
-        if (extracted(getLog(), packaging, modules, baseDir)) return;
+        if (gitDir == null && extracted(getLog(), packaging, modules, baseDir)) return;
+
+        Optional<MonorepoDaemon.Answer> answer = useDaemon && gitDir == null && !readFromGit
+                ? DaemonClient.query(basedir, "changed", changeDetectionOptions(), discoveryIgnores, getLog())
+                : Optional.empty();
+        if (answer.isPresent()) {
+            getLog().info("Answered by the daemon at " + MonorepoDaemon.socketPath(basedir));
+            print(answer.get().changed(), answer.get().kinds());
+            return;
+        }
+
+        ModelCache modelCache = new ModelCache();
+        RunReport runReport = new RunReport();
+        GitHelper gitHelper = newGitHelper(modelCache, runReport);
+        try {
+            // listing needs no graph, so one is only used when another goal of the build already built it
+            ChangeAnalysis analysis = sharedAnalysis().orElseGet(() -> {
+                List<String> changedModules = gitHelper.changedModuleList();
+                return changedModules == null || !gitHelper.hasHiddenChanges()
+                        ? ChangeAnalysis.withoutGraph(gitHelper, changedModules)
+                        : ChangeAnalysis.withGraph(gitHelper, changedModules,
+                                buildDependencyGraph(gitHelper, modelCache, runReport));
+            });
+            print(analysis.changedModules(), analysis.changeKinds());
+        } finally {
+            writeRunReport("list-changed-modules", runReport, gitHelper);
+        }
+    }
 
-        List<String> changedModules = new GitHelper(getLog(), basedir).changedModuleList();
+    private void print(List<String> changedModules, Map<String, Set<ChangeKind>> changeKinds) {
         if (changedModules == null || changedModules.isEmpty()) {
             getLog().info("No modules changed since last successful build.");
             return;
@@ -38,8 +63,9 @@ public class ListChangedModulesMojo extends AbstractMojo {
 
         getLog().info("Changed modules since last successful build:");
         for (String module : changedModules) {
-            getLog().info("- " + module);
+            Set<ChangeKind> kinds = changeKinds.getOrDefault(module, Set.of());
+            getLog().info("- " + module + (kinds.isEmpty() ? "" : " " + kinds));
         }
     }
 
-}
\ No newline at end of file
+}
@@ -27,6 +27,10 @@ public class MavenEnvironment {
         return getSession().getRequest().getLocalRepositoryPath().getAbsolutePath();
     }
 
+    public boolean isOffline() {
+        return getSession().isOffline();
+    }
+
     public File getUserSettingsFile() {
         return getSession().getRequest().getUserSettingsFile();
     }
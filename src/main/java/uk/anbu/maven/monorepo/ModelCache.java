@@ -0,0 +1,65 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Parsed pom.xml models keyed by canonical path. An entry is reused for as long as the file's modification
+ * time is unchanged, so each POM is parsed at most once per edit. Safe for concurrent use.
+ */
+public class ModelCache {
+
+    private record Entry(long lastModified, Model model) {}
+
+    private final Map<Path, Entry> models = new ConcurrentHashMap<>();
+    private final AtomicInteger parsed = new AtomicInteger();
+
+    public Model get(File pomFile) {
+        return get(pomFile.toPath());
+    }
+
+    @SneakyThrows
+    public Model get(Path pomFile) {
+        Path key = pomFile.toRealPath();
+        long lastModified = Files.getLastModifiedTime(key).toMillis();
+        Entry entry = models.get(key);
+        if (entry == null || entry.lastModified() != lastModified) {
+            entry = new Entry(lastModified, read(key));
+            models.put(key, entry);
+        }
+        return entry.model();
+    }
+
+    // Parses the given POMs on the common fork-join pool; results are keyed by the paths passed in
+    public Map<Path, Model> getAll(Collection<Path> pomFiles) {
+        return pomFiles.parallelStream()
+                .distinct()
+                .collect(Collectors.toConcurrentMap(Function.identity(), this::get));
+    }
+
+    public int getParsedCount() {
+        return parsed.get();
+    }
+
+    @SneakyThrows
+    private Model read(Path pomFile) {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(pomFile))) {
+            Model model = new MavenXpp3Reader().read(input);
+            parsed.incrementAndGet();
+            return model;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.execution.BuildSuccess;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.slf4j.LoggerFactory;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Advances the baseline of a module to HEAD after an {@code install} or {@code deploy} that built it and every
+ * module it depends on successfully, so a module failing elsewhere in the reactor no longer holds back the others.
+ * Upstream modules left out of a pruned or {@code -pl} build count as built when they are unchanged since their own
+ * baseline; a module with any other upstream module not built keeps its baseline, because it may have been built
+ * against artifacts older than HEAD. Modules built from uncommitted changes, directly or through a
+ * dependency, also keep theirs. Only active when the plugin is declared with {@code <extensions>true</extensions>}.
+ */
+@Named("monorepo-build-baselines")
+@Singleton
+public class ModuleBaselineRecorder extends AbstractMavenLifecycleParticipant {
+
+    private final Slf4jLog log = new Slf4jLog(LoggerFactory.getLogger(ModuleBaselineRecorder.class));
+
+    @Override
+    public void afterSessionEnd(MavenSession session) {
+        MavenProject topLevelProject = session.getTopLevelProject();
+        if (topLevelProject == null || session.getResult() == null
+                || !FingerprintRecorder.installsArtifacts(session.getGoals())) {
+            return;
+        }
+        File root = topLevelProject.getBasedir();
+        if (!GitHelper.isRepository(root)) {
+            return;
+        }
+
+        Set<String> built = new HashSet<>();
+        Set<String> succeeded = new HashSet<>();
+        for (MavenProject project : session.getProjects()) {
+            String module = ModuleTrie.modulePath(root, project.getBasedir());
+            built.add(module);
+            if (session.getResult().getBuildSummary(project) instanceof BuildSuccess) {
+                succeeded.add(module);
+            }
+        }
+        ModuleTrie moduleTrie = ModuleTrie.fromProjects(root, session.getAllProjects());
+        // only local refs are compared, the baselines are those the build started from
+        GitHelper gitHelper = new GitHelper(log, root,
+                ChangeDetectionOptions.builder().fetchMode(FetchMode.NONE).build(), new ModelCache(), new RunReport());
+        gitHelper.setModuleTrie(moduleTrie);
+        Set<String> uncommitted = gitHelper.uncommittedPaths();
+
+        DependencyUpdateAnalyzer analyzer = new DependencyUpdateAnalyzer(new ModelCache(), log, new RunReport());
+        analyzer.buildDependencyGraph(root, session.getAllProjects());
+        List<String> dirtyModules = uncommitted.stream()
+                .map(moduleTrie::findModule)
+                .flatMap(Optional::stream)
+                .distinct()
+                .toList();
+        Set<Module> tainted = analyzer.findModulesToUpdate(dirtyModules);
+
+        // modules left out of the build, by pruning or -pl, still count as built when nothing changed them
+        Set<String> changed = null;
+        if (!built.containsAll(moduleTrie.getAllModules())) {
+            List<String> changedModules = gitHelper.changedModuleList();
+            changed = changedModules == null
+                    ? null
+                    : new HashSet<>(gitHelper.withModulesBehindDependencies(changedModules, analyzer));
+        }
+
+        List<String> advanced = modulesToAdvance(analyzer, built, succeeded, changed, tainted);
+        gitHelper.advanceModuleBaselines(advanced);
+        log.debug(String.format("Advanced the baselines of %d of %d modules built", advanced.size(),
+                succeeded.size()));
+    }
+
+    /**
+     * The modules built successfully whose upstream modules were all either built successfully too, or left out
+     * of the build while unchanged since their own baseline. Without a known set of changed modules, every
+     * module left out counts as changed.
+     */
+    static List<String> modulesToAdvance(DependencyUpdateAnalyzer analyzer, Set<String> built, Set<String> succeeded,
+                                         Set<String> changed, Set<Module> tainted) {
+        List<String> advanced = new ArrayList<>();
+        for (String module : new TreeSet<>(succeeded)) {
+            if (!module.isEmpty() && analyzer.findModule(module)
+                    .filter(graphModule -> builtWithUpstream(graphModule, analyzer, built, succeeded, changed, tainted))
+                    .isPresent()) {
+                advanced.add(module);
+            }
+        }
+        return advanced;
+    }
+
+    // True if the module and everything it depends on are built from committed sources, in this build or before
+    private static boolean builtWithUpstream(Module module, DependencyUpdateAnalyzer analyzer, Set<String> built,
+                                             Set<String> succeeded, Set<String> changed, Set<Module> tainted) {
+        ModuleGraph graph = analyzer.getModuleGraph();
+        Set<Module> seen = new HashSet<>();
+        Deque<Module> pending = new ArrayDeque<>(List.of(module));
+        while (!pending.isEmpty()) {
+            Module next = pending.pop();
+            if (!seen.add(next)) {
+                continue;
+            }
+            List<String> directories = analyzer.findProjectDirectories(next);
+            if (tainted.contains(next) || directories.isEmpty()) {
+                return false;
+            }
+            boolean unchangedAndLeftOut = changed != null
+                    && directories.stream().noneMatch(directory -> built.contains(directory) || changed.contains(directory));
+            if (!succeeded.containsAll(directories) && !unchangedAndLeftOut) {
+                return false;
+            }
+            pending.addAll(graph.getDependencies(next));
+        }
+        return true;
+    }
+}
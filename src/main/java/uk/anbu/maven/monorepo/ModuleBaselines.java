@@ -0,0 +1,71 @@
+package uk.anbu.maven.monorepo;
+
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The commit each module last built successfully at, kept as one ref per module under
+ * {@code refs/monorepo-build/baselines/}. Module paths are URL-encoded into the ref name so that a module and
+ * the modules nested in it never collide as a ref and a ref directory.
+ */
+public class ModuleBaselines {
+
+    public static final String REF_PREFIX = "refs/monorepo-build/baselines/";
+
+    private final Repository repository;
+
+    public ModuleBaselines(Repository repository) {
+        this.repository = repository;
+    }
+
+    // Module path relative to the root to the commit it last built successfully at
+    public Map<String, ObjectId> read() throws IOException {
+        Map<String, ObjectId> baselines = new HashMap<>();
+        for (Ref ref : repository.getRefDatabase().getRefsByPrefix(REF_PREFIX)) {
+            String module = URLDecoder.decode(ref.getName().substring(REF_PREFIX.length()), StandardCharsets.UTF_8);
+            baselines.put(module, ref.getObjectId());
+        }
+        return baselines;
+    }
+
+    // Points the refs of all given modules at the commit in a single ref transaction
+    public void advance(Collection<String> modules, ObjectId commit) throws IOException {
+        Map<String, ObjectId> current = read();
+        BatchRefUpdate update = repository.getRefDatabase().newBatchUpdate();
+        update.setRefLogMessage("monorepo-build: built successfully", false);
+        for (String module : modules) {
+            ObjectId previous = current.getOrDefault(module, ObjectId.zeroId());
+            if (!previous.equals(commit)) {
+                update.addCommand(new ReceiveCommand(previous, commit, refName(module)));
+            }
+        }
+        if (update.getCommands().isEmpty()) {
+            return;
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            update.execute(walk, NullProgressMonitor.INSTANCE);
+        }
+        for (ReceiveCommand command : update.getCommands()) {
+            if (command.getResult() != ReceiveCommand.Result.OK) {
+                throw new IOException("Could not update " + command.getRefName() + ": " + command.getResult());
+            }
+        }
+    }
+
+    private static String refName(String module) {
+        return REF_PREFIX + URLEncoder.encode(module, StandardCharsets.UTF_8);
+    }
+}
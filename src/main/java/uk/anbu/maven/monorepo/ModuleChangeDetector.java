@@ -0,0 +1,187 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Compares two trees directory by directory and reports the modules that differ. A subtree with equal ids
+ * on both sides is never opened, and once the module owning a subtree is known to have changed the subtree
+ * is skipped unless other modules are nested below it. With a {@link ChangeClassifier} the subtree of a changed
+ * module is entered until one of its changes affects the artifact, to tell test-only and docs-only modules apart.
+ */
+public class ModuleChangeDetector {
+
+    private final Log log;
+    private final ModuleTrie moduleTrie;
+    private final List<PathMatcher> outsideModuleTriggers;
+    private final ChangeClassifier classifier;
+    private int entriesCompared;
+    private Map<String, Set<ChangeKind>> changeKinds = Map.of();
+    // Outcomes of earlier module directory comparisons, null unless reuseModuleSubtrees was called
+    private Map<Subtree, SubtreeDiff> moduleSubtrees;
+
+    private record Subtree(String module, ObjectId oldTree, ObjectId newTree, Map<String, Set<ChangeKind>> kinds) {
+    }
+
+    private record SubtreeDiff(List<String> changedModules, Map<String, Set<ChangeKind>> kinds) {
+    }
+
+    public ModuleChangeDetector(Log log, ModuleTrie moduleTrie, List<String> outsideModuleTriggers) {
+        this(log, moduleTrie, outsideModuleTriggers, null);
+    }
+
+    public ModuleChangeDetector(Log log, ModuleTrie moduleTrie, List<String> outsideModuleTriggers,
+                                ChangeClassifier classifier) {
+        this.log = log;
+        this.moduleTrie = moduleTrie;
+        this.outsideModuleTriggers = outsideModuleTriggers.stream()
+                .map(glob -> FileSystems.getDefault().getPathMatcher("glob:" + glob))
+                .toList();
+        this.classifier = classifier;
+    }
+
+    public Set<String> findChangedModules(ObjectReader reader, AnyObjectId oldTree, AnyObjectId newTree)
+            throws IOException {
+        Set<String> changedModules = new LinkedHashSet<>();
+        Map<String, Set<ChangeKind>> kinds = new HashMap<>();
+        int entries = compare(reader, "", oldTree, newTree, changedModules, kinds);
+        entriesCompared = entries;
+        changeKinds = kinds;
+        log.debug(String.format("Compared %d tree entries to find %d changed modules", entries, changedModules.size()));
+        return changedModules;
+    }
+
+    /**
+     * Remembers the outcome for every module directory entered from now on, so a later comparison that meets the
+     * same pair of module trees takes it over instead of walking them again. For comparing many similar pairs of
+     * trees, see {@link PairChangeDetector}.
+     */
+    public void reuseModuleSubtrees() {
+        if (moduleSubtrees == null) {
+            moduleSubtrees = new HashMap<>();
+        }
+    }
+
+    // Compares two trees found at prefix, the empty string for the root, and returns the entries compared
+    private int compare(ObjectReader reader, String prefix, AnyObjectId oldTree, AnyObjectId newTree,
+                        Set<String> changedModules, Map<String, Set<ChangeKind>> kinds) throws IOException {
+        int entries = 0;
+        try (TreeWalk walk = new TreeWalk(reader)) {
+            addTree(walk, oldTree);
+            addTree(walk, newTree);
+            walk.setRecursive(false);
+            walk.setFilter(TreeFilter.ANY_DIFF);
+
+            while (walk.next()) {
+                entries++;
+                String path = prefix + walk.getPathString();
+                Optional<String> module = moduleTrie.findModule(path);
+                if (walk.isSubtree()) {
+                    boolean nestedModules = moduleTrie.hasModulesBelow(path);
+                    boolean classified = classifier == null || module.map(kinds::get)
+                            .map(moduleKinds -> moduleKinds.stream().anyMatch(ChangeKind::affectsArtifact))
+                            .orElse(false);
+                    if (module.isPresent() && !nestedModules && classified) {
+                        // the differing tree id is enough, no need to look inside
+                        changedModules.add(module.get());
+                    } else if (moduleSubtrees != null && module.filter(path::equals).isPresent()) {
+                        entries += compareModule(reader, path, walk.getObjectId(0), walk.getObjectId(1),
+                                changedModules, kinds);
+                    } else if (module.isPresent() || nestedModules
+                            || (module.isEmpty() && !outsideModuleTriggers.isEmpty())) {
+                        walk.enterSubtree();
+                    }
+                } else if (module.isPresent()) {
+                    changedModules.add(module.get());
+                    if (classifier != null) {
+                        addKind(kinds, module.get(), classifier.classify(path.substring(module.get().length() + 1)));
+                    }
+                } else if (matchesAny(path)) {
+                    log.info(String.format("%s is outside every module and marks all modules as changed", path));
+                    changedModules.addAll(moduleTrie.getTopLevelModules());
+                    if (classifier != null) {
+                        moduleTrie.getTopLevelModules().forEach(topLevel -> addKind(kinds, topLevel, ChangeKind.OTHER));
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Compares the directory of a module, or takes the outcome of an earlier comparison of the same trees over.
+     * Inside the directory only the kinds already found for the module and those nested in it matter, e.g. the
+     * kind an outside trigger gave a top-level module, so they are part of the key.
+     */
+    private int compareModule(ObjectReader reader, String module, ObjectId oldTree, ObjectId newTree,
+                              Set<String> changedModules, Map<String, Set<ChangeKind>> kinds) throws IOException {
+        var key = new Subtree(module, oldTree, newTree, kindsAtOrBelow(kinds, module));
+        SubtreeDiff diff = moduleSubtrees.get(key);
+        int entries = 0;
+        if (diff == null) {
+            Set<String> subtreeChanges = new LinkedHashSet<>();
+            Map<String, Set<ChangeKind>> subtreeKinds = new HashMap<>();
+            key.kinds().forEach((path, moduleKinds) -> subtreeKinds.put(path, EnumSet.copyOf(moduleKinds)));
+            entries = compare(reader, module + "/", oldTree, newTree, subtreeChanges, subtreeKinds);
+            diff = new SubtreeDiff(List.copyOf(subtreeChanges), kindsAtOrBelow(subtreeKinds, module));
+            moduleSubtrees.put(key, diff);
+        }
+        changedModules.addAll(diff.changedModules());
+        diff.kinds().forEach((path, moduleKinds) -> kinds.put(path, EnumSet.copyOf(moduleKinds)));
+        return entries;
+    }
+
+    private static Map<String, Set<ChangeKind>> kindsAtOrBelow(Map<String, Set<ChangeKind>> kinds, String module) {
+        Map<String, Set<ChangeKind>> below = new HashMap<>();
+        kinds.forEach((path, moduleKinds) -> {
+            if (path.equals(module) || path.startsWith(module + "/")) {
+                below.put(path, Set.copyOf(moduleKinds));
+            }
+        });
+        return Map.copyOf(below);
+    }
+
+    // A tree missing on one side, e.g. of an added module, is compared as an empty one
+    private static void addTree(TreeWalk walk, AnyObjectId tree) throws IOException {
+        if (ObjectId.zeroId().equals(tree)) {
+            walk.addTree(new EmptyTreeIterator());
+        } else {
+            walk.addTree(tree);
+        }
+    }
+
+    public int getEntriesCompared() {
+        return entriesCompared;
+    }
+
+    // Kinds of the changes found per module by the last comparison, empty without a classifier
+    public Map<String, Set<ChangeKind>> getChangeKinds() {
+        return changeKinds;
+    }
+
+    private static void addKind(Map<String, Set<ChangeKind>> kinds, String module, ChangeKind kind) {
+        kinds.computeIfAbsent(module, key -> EnumSet.noneOf(ChangeKind.class)).add(kind);
+    }
+
+    private boolean matchesAny(String path) {
+        Path candidate = Path.of(path);
+        return outsideModuleTriggers.stream().anyMatch(matcher -> matcher.matches(candidate));
+    }
+}
@@ -0,0 +1,170 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import org.apache.maven.model.Model;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.PomEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Finds the pom.xml files that belong to a set of modules by following their {@code <modules>} declarations,
+ * those of build profiles included. Only an aggregator that declares no modules at all has its directory
+ * walked, and that walk skips directories matching the ignore globs, so build output, node_modules and IDE
+ * directories are never entered and the POMs copied into them never become modules.
+ */
+public class ModuleDiscovery {
+
+    public static final List<String> DEFAULT_IGNORES = List.of("target", "node_modules", ".*");
+
+    private final List<PathMatcher> ignores;
+    private final AtomicInteger directoriesWalked = new AtomicInteger();
+
+    // Globs are matched against the name of a directory and against its path relative to the repository root
+    public ModuleDiscovery(Collection<String> ignoreGlobs) {
+        this.ignores = ignoreGlobs.stream()
+                .map(glob -> FileSystems.getDefault().getPathMatcher("glob:" + glob))
+                .toList();
+    }
+
+    /**
+     * Paths relative to the root of the pom.xml files making up the given modules and everything declared
+     * below them. The entries function loads the entries of a batch of paths, leaving out those that do not
+     * exist; the walk function lists the pom.xml paths below a directory, e.g. {@link #walk(Path, String)}.
+     */
+    public List<String> findModulePoms(Collection<String> modulePoms,
+                                       Function<List<String>, Map<String, PomEntry>> entries,
+                                       Function<String, List<String>> walk) {
+        List<String> found = new ArrayList<>();
+        Set<String> visited = new HashSet<>(modulePoms);
+        List<String> level = List.copyOf(visited);
+        // level by level, so the entries of a level can be loaded in one parallel batch
+        while (!level.isEmpty()) {
+            Map<String, PomEntry> loaded = entries.apply(level);
+            List<String> next = new ArrayList<>();
+            for (String path : level) {
+                PomEntry entry = loaded.get(path);
+                if (entry == null) {
+                    continue;
+                }
+                found.add(path);
+                if (!"pom".equals(entry.packaging())) {
+                    continue;
+                }
+                List<String> children = entry.modules().isEmpty()
+                        ? walk.apply(directoryOf(path))
+                        : entry.modules().stream().map(module -> modulePomPath(path, module)).toList();
+                children.stream().filter(child -> child != null && visited.add(child)).forEach(next::add);
+            }
+            level = next;
+        }
+        return found;
+    }
+
+    // The pom.xml paths below a directory of the working tree, relative to the root
+    @SneakyThrows
+    public List<String> walk(Path rootDirectory, String directory) {
+        Path start = rootDirectory.resolve(directory);
+        List<String> poms = new ArrayList<>();
+        if (!Files.isDirectory(start)) {
+            return poms;
+        }
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                if (!dir.equals(start) && isIgnored(rootDirectory.relativize(dir))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                directoriesWalked.incrementAndGet();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (file.getFileName().toString().equals("pom.xml")) {
+                    poms.add(rootDirectory.relativize(file).toString().replace(File.separatorChar, '/'));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return poms;
+    }
+
+    // Same as walk, over pom.xml paths already known, e.g. from a git tree
+    public List<String> walk(NavigableMap<String, ?> pomPaths, String directory) {
+        String prefix = directory.isEmpty() ? "" : directory + "/";
+        Path start = Path.of(directory);
+        List<String> poms = new ArrayList<>();
+        for (String path : pomPaths.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet()) {
+            Path relative = Path.of(path).getParent();
+            boolean ignored = false;
+            while (relative != null && !ignored && !relative.equals(start)) {
+                ignored = isIgnored(relative);
+                relative = relative.getParent();
+            }
+            if (!ignored) {
+                poms.add(path);
+            }
+        }
+        return poms;
+    }
+
+    public int getDirectoriesWalked() {
+        return directoriesWalked.get();
+    }
+
+    // True if the directory, given relative to the root, matches one of the ignore globs
+    public boolean isIgnored(Path relativeDirectory) {
+        Path name = relativeDirectory.getFileName();
+        return ignores.stream().anyMatch(ignore -> ignore.matches(name) || ignore.matches(relativeDirectory));
+    }
+
+    // Modules declared by the POM, including those only declared in one of its profiles
+    public static List<String> declaredModules(Model model) {
+        List<String> modules = new ArrayList<>(model.getModules());
+        model.getProfiles().forEach(profile -> profile.getModules().stream()
+                .filter(module -> !modules.contains(module))
+                .forEach(modules::add));
+        return modules;
+    }
+
+    // Path of the pom.xml a module declared in the given pom.xml points at, null if it is outside the root
+    public static String modulePomPath(String declaringPomPath, String module) {
+        Path parent = Path.of(declaringPomPath).getParent();
+        Path resolved = (parent == null ? Path.of(module) : parent.resolve(module)).normalize();
+        String path = resolved.toString().replace(File.separatorChar, '/');
+        if (path.startsWith("..")) {
+            return null;
+        }
+        if (path.endsWith(".xml")) {
+            return path;
+        }
+        return path.isEmpty() ? "pom.xml" : path + "/pom.xml";
+    }
+
+    private static String directoryOf(String pomPath) {
+        int slash = pomPath.lastIndexOf('/');
+        return slash < 0 ? "" : pomPath.substring(0, slash);
+    }
+}
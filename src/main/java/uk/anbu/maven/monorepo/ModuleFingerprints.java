@@ -0,0 +1,122 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.jgit.lib.ObjectId;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content fingerprints of the modules at HEAD. A fingerprint hashes the git tree of the module directory, the
+ * root pom.xml every module inherits from, and the fingerprints of the modules it depends on, so it changes
+ * whenever anything that goes into building the module changes. Modules that are not committed yet, and the
+ * modules depending on them, get no fingerprint.
+ */
+public class ModuleFingerprints {
+
+    private static final String ROOT_POM = "pom.xml";
+
+    private final ModuleGraph graph;
+    private final Map<Module, ObjectId> trees;
+    private final ObjectId rootPom;
+    private final Map<Module, String> fingerprints = new HashMap<>();
+    private final Set<Module> inProgress = new HashSet<>();
+
+    private ModuleFingerprints(ModuleGraph graph, Map<Module, ObjectId> trees, ObjectId rootPom) {
+        this.graph = graph;
+        this.trees = trees;
+        this.rootPom = rootPom;
+    }
+
+    public static Map<Module, String> compute(GitHelper gitHelper, DependencyUpdateAnalyzer analyzer) {
+        ModuleGraph graph = analyzer.getModuleGraph();
+        Map<String, Module> byDirectory = new HashMap<>();
+        for (Module module : graph.getModules()) {
+            analyzer.findModuleDirectory(module).ifPresent(directory -> byDirectory.put(directory, module));
+        }
+        List<String> paths = new ArrayList<>(byDirectory.keySet());
+        paths.add(ROOT_POM);
+        Map<String, ObjectId> ids = gitHelper.headObjectIds(paths);
+
+        Map<Module, ObjectId> trees = new HashMap<>();
+        byDirectory.forEach((directory, module) -> {
+            if (ids.containsKey(directory)) {
+                trees.put(module, ids.get(directory));
+            }
+        });
+        ModuleFingerprints fingerprints = new ModuleFingerprints(graph, trees, ids.get(ROOT_POM));
+        Map<Module, String> result = new HashMap<>();
+        for (Module module : graph.getModules()) {
+            String fingerprint = fingerprints.fingerprint(module);
+            if (fingerprint != null) {
+                result.put(module, fingerprint);
+            }
+        }
+        return result;
+    }
+
+    // The given modules without those whose current fingerprint was recorded for an artifact still installed
+    public static Set<Module> skipInstalled(Set<Module> modules, GitHelper gitHelper, DependencyUpdateAnalyzer analyzer,
+                                            File localRepository, Log log) {
+        FingerprintStore store = FingerprintStore.load(new File(gitHelper.getStateDirectory(), FingerprintStore.FILE_NAME));
+        Map<Module, String> fingerprints = compute(gitHelper, analyzer);
+        fingerprints.keySet().retainAll(modules);
+        Map<Module, FingerprintStore.Artifact> installed = store.findInstalled(fingerprints, localRepository);
+        installed.forEach((module, artifact) ->
+                log.info(String.format("Skipping %s, unchanged since %s was installed", module, artifact)));
+        Set<Module> remaining = new LinkedHashSet<>(modules);
+        remaining.removeAll(installed.keySet());
+        return remaining;
+    }
+
+    @SneakyThrows
+    private String fingerprint(Module module) {
+        if (fingerprints.containsKey(module)) {
+            return fingerprints.get(module);
+        }
+        ObjectId tree = trees.get(module);
+        if (tree == null || rootPom == null) {
+            fingerprints.put(module, null);
+            return null;
+        }
+        if (!inProgress.add(module)) {
+            // a module on a dependency cycle is hashed without the edge that closes the cycle
+            return "";
+        }
+        List<String> upstream = new ArrayList<>();
+        for (Module dependency : graph.getDependencies(module)) {
+            String fingerprint = fingerprint(dependency);
+            if (fingerprint == null) {
+                upstream = null;
+                break;
+            }
+            upstream.add(fingerprint);
+        }
+        inProgress.remove(module);
+
+        String fingerprint = null;
+        if (upstream != null) {
+            Collections.sort(upstream);
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update((module.groupId() + ':' + module.artifactId()).getBytes(StandardCharsets.UTF_8));
+            digest.update(tree.name().getBytes(StandardCharsets.US_ASCII));
+            digest.update(rootPom.name().getBytes(StandardCharsets.US_ASCII));
+            upstream.forEach(id -> digest.update(id.getBytes(StandardCharsets.US_ASCII)));
+            fingerprint = HexFormat.of().formatHex(digest.digest());
+        }
+        fingerprints.put(module, fingerprint);
+        return fingerprint;
+    }
+}
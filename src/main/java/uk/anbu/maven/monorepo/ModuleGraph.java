@@ -0,0 +1,193 @@
+package uk.anbu.maven.monorepo;
+
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Immutable, integer-indexed view of the module graph. Every module gets a dense id, edges point from a module
+ * to the modules that must be updated when it changes, and the reverse-transitive closure of each module is
+ * precomputed as a bitset so the affected set of any change is a handful of bitwise ORs.
+ */
+public class ModuleGraph {
+
+    private final List<Module> modules;
+    private final Map<Module, Integer> ids = new HashMap<>();
+    private final Map<String, Module> byArtifactId = new HashMap<>();
+    private final Map<Module, Module> parents;
+    private final int[][] dependents;
+    private final int[][] dependencies;
+    private final BitSet[] closures;
+
+    ModuleGraph(Map<Module, Set<Module>> moduleDependencies, Map<Module, Module> parents) {
+        this.modules = moduleDependencies.keySet().stream()
+                .sorted(Comparator.comparing(Module::artifactId).thenComparing(Module::groupId))
+                .toList();
+        for (int i = 0; i < modules.size(); i++) {
+            ids.put(modules.get(i), i);
+            byArtifactId.putIfAbsent(modules.get(i).artifactId(), modules.get(i));
+        }
+        this.parents = Map.copyOf(parents);
+
+        List<Set<Integer>> reverse = new ArrayList<>();
+        List<Set<Integer>> forward = new ArrayList<>();
+        for (int i = 0; i < modules.size(); i++) {
+            reverse.add(new LinkedHashSet<>());
+            forward.add(new LinkedHashSet<>());
+        }
+        for (int i = 0; i < modules.size(); i++) {
+            Module module = modules.get(i);
+            for (Module dependency : moduleDependencies.get(module)) {
+                Integer dependencyId = ids.get(dependency);
+                if (dependencyId != null && dependencyId != i) {
+                    reverse.get(dependencyId).add(i);
+                    forward.get(i).add(dependencyId);
+                }
+            }
+            // a changed child also changes the module that contains it
+            Integer parentId = ids.get(parents.get(module));
+            if (parentId != null && parentId != i) {
+                reverse.get(i).add(parentId);
+                forward.get(parentId).add(i);
+            }
+        }
+        this.dependents = toArrays(reverse);
+        this.dependencies = toArrays(forward);
+        this.closures = computeClosures();
+    }
+
+    public int size() {
+        return modules.size();
+    }
+
+    public List<Module> getModules() {
+        return modules;
+    }
+
+    public Optional<Module> findByArtifactId(String artifactId) {
+        return Optional.ofNullable(byArtifactId.get(artifactId));
+    }
+
+    // The top-level module that contains the given (possibly nested) module
+    public Optional<Module> findParentModule(Module child) {
+        return Optional.ofNullable(parents.get(child));
+    }
+
+    public List<Module> getDependents(Module module) {
+        return toModules(dependents[ids.get(module)]);
+    }
+
+    // Modules that must be handled before the given one: its dependencies and the children it contains
+    public List<Module> getDependencies(Module module) {
+        return toModules(dependencies[ids.get(module)]);
+    }
+
+    public Set<Module> findAffectedModules(Collection<Module> changedModules) {
+        BitSet affected = new BitSet(modules.size());
+        for (Module module : changedModules) {
+            Integer id = ids.get(module);
+            if (id != null) {
+                affected.or(closures[id]);
+            }
+        }
+        Set<Module> result = new LinkedHashSet<>();
+        affected.stream().forEach(id -> result.add(modules.get(id)));
+        return result;
+    }
+
+    private List<Module> toModules(int[] moduleIds) {
+        return Arrays.stream(moduleIds).mapToObj(modules::get).toList();
+    }
+
+    private static int[][] toArrays(List<Set<Integer>> adjacency) {
+        int[][] arrays = new int[adjacency.size()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = adjacency.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return arrays;
+    }
+
+    /**
+     * Iterative Tarjan over the dependents edges. Strongly connected components are completed only after every
+     * component reachable from them, so each closure can be assembled from already finished ones; members of a
+     * cycle share a single bitset.
+     */
+    private BitSet[] computeClosures() {
+        int size = modules.size();
+        BitSet[] result = new BitSet[size];
+        int[] index = new int[size];
+        int[] lowLink = new int[size];
+        int[] nextEdge = new int[size];
+        boolean[] onStack = new boolean[size];
+        Arrays.fill(index, -1);
+        Deque<Integer> stack = new ArrayDeque<>();
+        Deque<Integer> callStack = new ArrayDeque<>();
+        int counter = 0;
+
+        for (int start = 0; start < size; start++) {
+            if (index[start] != -1) {
+                continue;
+            }
+            callStack.push(start);
+            while (!callStack.isEmpty()) {
+                int node = callStack.peek();
+                if (index[node] == -1) {
+                    index[node] = lowLink[node] = counter++;
+                    stack.push(node);
+                    onStack[node] = true;
+                }
+                if (nextEdge[node] < dependents[node].length) {
+                    int next = dependents[node][nextEdge[node]++];
+                    if (index[next] == -1) {
+                        callStack.push(next);
+                    } else if (onStack[next]) {
+                        lowLink[node] = Math.min(lowLink[node], index[next]);
+                    }
+                    continue;
+                }
+                callStack.pop();
+                if (!callStack.isEmpty()) {
+                    int caller = callStack.peek();
+                    lowLink[caller] = Math.min(lowLink[caller], lowLink[node]);
+                }
+                if (lowLink[node] == index[node]) {
+                    List<Integer> component = new ArrayList<>();
+                    int member;
+                    do {
+                        member = stack.pop();
+                        onStack[member] = false;
+                        component.add(member);
+                    } while (member != node);
+
+                    BitSet closure = new BitSet(size);
+                    for (int m : component) {
+                        closure.set(m);
+                    }
+                    for (int m : component) {
+                        for (int dependent : dependents[m]) {
+                            if (result[dependent] != null && result[dependent] != closure) {
+                                closure.or(result[dependent]);
+                            }
+                        }
+                    }
+                    for (int m : component) {
+                        result[m] = closure;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,151 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Maps repository-relative paths to the deepest module that owns them. Modules are keyed by their directory
+ * relative to the root, using '/' as separator, exactly as git reports paths.
+ */
+public class ModuleTrie {
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private String module;
+        private int modulesBelow;
+    }
+
+    private final Node root = new Node();
+    private final List<String> topLevelModules = new ArrayList<>();
+    private final List<String> allModules = new ArrayList<>();
+
+    // Follows <modules> declarations recursively from the root pom.xml
+    public static ModuleTrie fromDeclaredModules(File rootPom, ModelCache modelCache) {
+        ModuleTrie trie = new ModuleTrie();
+        Path rootDirectory = rootPom.getAbsoluteFile().toPath().getParent().normalize();
+        trie.addDeclaredModules(rootDirectory, rootDirectory,
+                pom -> Files.isRegularFile(pom) ? ModuleDiscovery.declaredModules(modelCache.get(pom)) : null, true);
+        return trie;
+    }
+
+    // Same as fromDeclaredModules, but takes the modules from projects the reactor has already loaded
+    public static ModuleTrie fromProjects(File rootDirectory, Collection<MavenProject> projects) {
+        Map<Path, List<String>> modulesByPom = new HashMap<>();
+        for (MavenProject project : projects) {
+            modulesByPom.put(project.getFile().getAbsoluteFile().toPath().normalize(), project.getModules());
+        }
+        ModuleTrie trie = new ModuleTrie();
+        Path root = rootDirectory.getAbsoluteFile().toPath().normalize();
+        trie.addDeclaredModules(root, root, modulesByPom::get, true);
+        return trie;
+    }
+
+    // Same as fromDeclaredModules, but takes the models by their pom.xml path relative to the root, e.g. from git
+    public static ModuleTrie fromModels(File rootDirectory, Map<String, Model> modelsByPath) {
+        ModuleTrie trie = new ModuleTrie();
+        Path root = rootDirectory.getAbsoluteFile().toPath().normalize();
+        trie.addDeclaredModules(root, root, pom -> {
+            Model model = modelsByPath.get(root.relativize(pom).toString().replace(File.separatorChar, '/'));
+            return model == null ? null : ModuleDiscovery.declaredModules(model);
+        }, true);
+        return trie;
+    }
+
+    private void addDeclaredModules(Path rootDirectory, Path directory, Function<Path, List<String>> modulesOf,
+                                    boolean topLevel) {
+        List<String> modules = modulesOf.apply(directory.resolve("pom.xml"));
+        if (modules == null) {
+            return;
+        }
+        for (String module : modules) {
+            Path moduleDirectory = directory.resolve(module).normalize();
+            if (Files.isRegularFile(moduleDirectory)) {
+                moduleDirectory = moduleDirectory.getParent();
+            }
+            if (!moduleDirectory.startsWith(rootDirectory) || moduleDirectory.equals(rootDirectory)) {
+                continue;
+            }
+            String modulePath = rootDirectory.relativize(moduleDirectory).toString().replace(File.separatorChar, '/');
+            if (add(modulePath)) {
+                if (topLevel) {
+                    topLevelModules.add(modulePath);
+                }
+                addDeclaredModules(rootDirectory, moduleDirectory, modulesOf, false);
+            }
+        }
+    }
+
+    // Directory relative to the root in the form used for module paths, "" for the root itself
+    public static String modulePath(File rootDirectory, File directory) {
+        Path relative = rootDirectory.toPath().toAbsolutePath().normalize()
+                .relativize(directory.toPath().toAbsolutePath().normalize());
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+
+    public boolean add(String modulePath) {
+        Node node = root;
+        List<Node> visited = new ArrayList<>();
+        for (String segment : modulePath.split("/")) {
+            visited.add(node);
+            node = node.children.computeIfAbsent(segment, key -> new Node());
+        }
+        if (node.module != null) {
+            return false;
+        }
+        node.module = modulePath;
+        visited.forEach(parent -> parent.modulesBelow++);
+        allModules.add(modulePath);
+        return true;
+    }
+
+    public Optional<String> findModule(String path) {
+        Node node = root;
+        String module = null;
+        int start = 0;
+        while (node != null && start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            node = node.children.get(path.substring(start, end));
+            if (node != null && node.module != null) {
+                module = node.module;
+            }
+            start = end + 1;
+        }
+        return Optional.ofNullable(module);
+    }
+
+    // True if any module is declared strictly below the given directory
+    public boolean hasModulesBelow(String directory) {
+        Node node = root;
+        if (!directory.isEmpty()) {
+            for (String segment : directory.split("/")) {
+                node = node.children.get(segment);
+                if (node == null) {
+                    return false;
+                }
+            }
+        }
+        return node.modulesBelow > 0;
+    }
+
+    public List<String> getTopLevelModules() {
+        return topLevelModules;
+    }
+
+    public List<String> getAllModules() {
+        return allModules;
+    }
+}
@@ -0,0 +1,353 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import org.apache.maven.plugin.logging.Log;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Answers change queries over a Unix domain socket from a long-lived process that keeps the repository open and
+ * refreshes the dependency graph incrementally, so a query costs milliseconds instead of a Maven start, a
+ * repository open and a full graph build. One request line is answered with tab-separated lines and an empty
+ * line; requests are {@code ping}, {@code changed [revision]}, {@code affected [revision]}, {@code refresh} and
+ * {@code stop}. Queries only read local refs; the remote is fetched at start, on {@code refresh} and every
+ * fetch interval, never per query.
+ */
+public class MonorepoDaemon {
+
+    // Unix domain socket paths are limited to a little over 100 bytes on most systems
+    private static final int MAX_SOCKET_PATH = 100;
+
+    // A client that has not sent its request line by then is disconnected
+    private static final long REQUEST_TIMEOUT_SECONDS = 10;
+
+    /**
+     * The answer to a query. changed is null when there is no baseline to compare against; affected and
+     * projects are only filled for {@code affected} queries.
+     */
+    public record Answer(String head, List<String> changed, Map<String, Set<ChangeKind>> kinds, List<String> affected,
+                         List<String> projects) {
+
+        public List<String> toLines() {
+            List<String> lines = new ArrayList<>();
+            lines.add("head\t" + head);
+            if (changed != null) {
+                lines.add(line("changed", changed));
+            }
+            kinds.forEach((module, moduleKinds) -> lines.add(String.join("\t", "kind", module,
+                    moduleKinds.stream().map(ChangeKind::name).collect(Collectors.joining(",")))));
+            lines.add(line("affected", affected));
+            lines.add(line("projects", projects));
+            return lines;
+        }
+
+        public static Answer parse(List<String> lines) throws IOException {
+            String head = null;
+            List<String> changed = null;
+            Map<String, Set<ChangeKind>> kinds = new LinkedHashMap<>();
+            List<String> affected = List.of();
+            List<String> projects = List.of();
+            for (String line : lines) {
+                List<String> fields = Arrays.asList(line.split("\t", -1));
+                List<String> values = fields.subList(1, fields.size()).stream().filter(value -> !value.isEmpty()).toList();
+                switch (fields.get(0)) {
+                    case "error" -> throw new IOException("Daemon: " + String.join(" ", values));
+                    case "head" -> head = values.isEmpty() ? null : values.get(0);
+                    case "changed" -> changed = values;
+                    case "kind" -> kinds.put(values.get(0), Arrays.stream(values.get(1).split(","))
+                            .map(ChangeKind::valueOf)
+                            .collect(Collectors.toCollection(() -> EnumSet.noneOf(ChangeKind.class))));
+                    case "affected" -> affected = values;
+                    case "projects" -> projects = values;
+                    default -> {
+                        // fields added by later versions are ignored
+                    }
+                }
+            }
+            return new Answer(head, changed, kinds, affected, projects);
+        }
+
+        static String line(String key, List<String> values) {
+            List<String> fields = new ArrayList<>(List.of(key));
+            fields.addAll(values);
+            return String.join("\t", fields);
+        }
+    }
+
+    private final Log log;
+    private final File basedir;
+    private final ChangeDetectionOptions options;
+    private final List<String> discoveryIgnores;
+    private final GitHelper gitHelper;
+    private final GitHelper fetcher;
+    private final long fetchIntervalSeconds;
+    private final ModelCache modelCache;
+    private final ModuleDiscovery moduleDiscovery;
+    // Guards the graph and the module trie, which queries refresh
+    private final Object analysisLock = new Object();
+    private DependencyUpdateAnalyzer analyzer;
+    private String graphCommit;
+    private volatile boolean running = true;
+
+    public MonorepoDaemon(Log log, File basedir, ChangeDetectionOptions options, List<String> discoveryIgnores,
+                          long fetchIntervalSeconds) {
+        this.log = log;
+        this.basedir = basedir;
+        this.options = options;
+        this.discoveryIgnores = List.copyOf(discoveryIgnores);
+        this.fetchIntervalSeconds = fetchIntervalSeconds;
+        this.modelCache = new ModelCache();
+        this.moduleDiscovery = new ModuleDiscovery(discoveryIgnores);
+        this.gitHelper = new GitHelper(log, basedir, options.toBuilder().fetchMode(FetchMode.NONE).build(), modelCache,
+                new RunReport());
+        this.fetcher = new GitHelper(log, basedir, options, modelCache, new RunReport());
+    }
+
+    /**
+     * The options that decide an answer, as sent in the {@code options} line of a ping. A client whose own
+     * description differs would get a different answer from a local analysis.
+     */
+    public static List<String> describe(ChangeDetectionOptions options, List<String> discoveryIgnores) {
+        return List.of(
+                "outsideModuleTriggers=" + String.join(",", options.getOutsideModuleTriggers()),
+                "classifyChanges=" + options.isClassifyChanges(),
+                "changeKindRules=" + String.join(",", options.getChangeKindRules()),
+                "discoveryIgnores=" + String.join(",", discoveryIgnores));
+    }
+
+    // How the daemon fetches, as sent in the fetch line of a ping
+    public static List<String> describeFetch(ChangeDetectionOptions options) {
+        return options.getFetchMode() == FetchMode.SHALLOW
+                ? List.of(options.getFetchMode().name(), String.valueOf(options.getFetchDepth()))
+                : List.of(options.getFetchMode().name());
+    }
+
+    // The socket of the daemon for a repository, inside its state directory unless that path is too long
+    @SneakyThrows
+    public static Path socketPath(File basedir) {
+        Path socket = new File(GitHelper.stateDirectory(basedir), "daemon.sock").toPath().toAbsolutePath();
+        if (socket.toString().length() <= MAX_SOCKET_PATH) {
+            return socket;
+        }
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(socket.toString().getBytes(StandardCharsets.UTF_8));
+        return Path.of(System.getProperty("java.io.tmpdir"),
+                "monorepo-build-" + HexFormat.of().formatHex(digest, 0, 8) + ".sock");
+    }
+
+    /**
+     * Serves requests until a stop request arrives. Each connection is answered on a worker thread, so a slow
+     * client or a refresh waiting for a fetch does not hold up the other requests.
+     */
+    public void serve() throws IOException {
+        Path socket = socketPath(basedir);
+        if (Files.exists(socket)) {
+            if (DaemonClient.request(basedir, "ping").isPresent()) {
+                throw new IllegalStateException("A daemon is already listening on " + socket);
+            }
+            // left behind by a daemon that did not shut down cleanly
+            Files.delete(socket);
+        }
+        Files.createDirectories(socket.getParent());
+        gitHelper.keepRepositoryOpen();
+        fetch();
+        log.info("Warming up: " + String.join(" | ", respond("affected")));
+
+        Thread cleanup = new Thread(() -> deleteSocket(socket));
+        Runtime.getRuntime().addShutdownHook(cleanup);
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(2, daemonThreads("monorepo-build-timer"));
+        ExecutorService workers = Executors.newCachedThreadPool(daemonThreads("monorepo-build-request"));
+        if (fetchIntervalSeconds > 0 && options.getFetchMode() != FetchMode.NONE) {
+            timer.scheduleWithFixedDelay(this::fetchQuietly, fetchIntervalSeconds, fetchIntervalSeconds,
+                    TimeUnit.SECONDS);
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            log.info("Listening on " + socket);
+            while (running) {
+                SocketChannel channel;
+                try {
+                    channel = server.accept();
+                } catch (ClosedChannelException e) {
+                    // closed by the worker that answered a stop request
+                    break;
+                }
+                workers.execute(() -> answer(channel, server, timer));
+            }
+        } finally {
+            workers.shutdownNow();
+            timer.shutdownNow();
+            deleteSocket(socket);
+            Runtime.getRuntime().removeShutdownHook(cleanup);
+        }
+        log.info("Stopped");
+    }
+
+    private void answer(SocketChannel channel, ServerSocketChannel server, ScheduledExecutorService timer) {
+        try (channel) {
+            // Unix domain channels have no read timeout, closing the channel ends a read that never returns
+            var timeout = timer.schedule(() -> closeQuietly(channel), REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            String request = reader.readLine();
+            if (!timeout.cancel(false)) {
+                return;
+            }
+            List<String> response = respond(request);
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+            for (String line : response) {
+                writer.write(line + "\n");
+            }
+            writer.write("\n");
+            writer.flush();
+        } catch (AsynchronousCloseException e) {
+            log.warn("Disconnected a client that sent no request within " + REQUEST_TIMEOUT_SECONDS + " s");
+        } catch (IOException e) {
+            log.warn("Could not answer a request: " + e.getMessage());
+        }
+        if (!running) {
+            closeQuietly(server);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    // Queries run while a fetch is in progress see the refs as they were before it
+    private synchronized void fetch() {
+        if (options.getFetchMode() != FetchMode.NONE) {
+            fetcher.fetch();
+        }
+    }
+
+    private void fetchQuietly() {
+        try {
+            fetch();
+        } catch (RuntimeException e) {
+            log.warn("Scheduled fetch failed: " + e.getMessage());
+        }
+    }
+
+    List<String> respond(String request) {
+        long start = System.nanoTime();
+        String[] parts = request == null ? new String[] {""} : request.trim().split("\\s+", 2);
+        String since = parts.length > 1 ? parts[1] : null;
+        try {
+            List<String> response = switch (parts[0]) {
+                case "ping" -> List.of("head\t" + gitHelper.headCommitId(),
+                        Answer.line("options", describe(options, discoveryIgnores)),
+                        Answer.line("fetch", describeFetch(options)));
+                case "refresh" -> {
+                    fetch();
+                    yield List.of("head\t" + gitHelper.headCommitId());
+                }
+                case "stop" -> {
+                    running = false;
+                    yield List.of();
+                }
+                case "changed" -> answer(since, false).toLines();
+                case "affected" -> answer(since, true).toLines();
+                default -> throw new IllegalArgumentException("Unknown request '" + request
+                        + "', expected ping, changed [revision], affected [revision], refresh or stop");
+            };
+            log.info(String.format("Answered '%s' in %d ms", request, (System.nanoTime() - start) / 1_000_000));
+            return response;
+        } catch (Exception e) {
+            log.warn(String.format("Request '%s' failed: %s", request, e.getMessage()));
+            return List.of("error\t" + String.valueOf(e.getMessage()).replace('\t', ' ').replace('\n', ' '));
+        }
+    }
+
+    private Answer answer(String since, boolean withAffected) {
+        synchronized (analysisLock) {
+            return analyze(since, withAffected);
+        }
+    }
+
+    private Answer analyze(String since, boolean withAffected) {
+        String head = gitHelper.headCommitId();
+        // modules may have been added or removed since the last query; the POMs themselves stay cached
+        gitHelper.setModuleTrie(null);
+        List<String> detected = since == null ? gitHelper.changedModuleList() : gitHelper.changedModulesSince(since);
+        if (detected == null || detected.isEmpty() && !gitHelper.hasHiddenChanges()) {
+            return new Answer(head, detected, new LinkedHashMap<>(gitHelper.getChangeKinds()), List.of(), List.of());
+        }
+
+        DependencyUpdateAnalyzer graph = refreshGraph(head);
+        List<String> changed = gitHelper.withModulesBehindDependencies(detected, graph);
+        Map<String, Set<ChangeKind>> kinds = new LinkedHashMap<>(gitHelper.getChangeKinds());
+        if (!withAffected) {
+            return new Answer(head, changed, kinds, List.of(), List.of());
+        }
+        Set<Module> affected = graph.findModulesToUpdate(changed, gitHelper.findArtifactUnchangedModules());
+        return new Answer(head, changed, kinds,
+                affected.stream().map(Module::toString).sorted().toList(),
+                affected.stream().flatMap(module -> graph.findProjectDirectories(module).stream()).sorted().toList());
+    }
+
+    // Refreshes the graph from the previous one, reading only the POMs changed since
+    private DependencyUpdateAnalyzer refreshGraph(String head) {
+        String rootPom = new File(basedir, "pom.xml").getAbsolutePath();
+        DependencyUpdateAnalyzer next = new DependencyUpdateAnalyzer(modelCache, log, new RunReport());
+        next.setModuleDiscovery(moduleDiscovery);
+        List<String> changedPoms = analyzer == null || graphCommit == null || head == null ? null
+                : head.equals(graphCommit) ? List.of() : gitHelper.changedPomPaths(graphCommit);
+        if (changedPoms == null) {
+            next.buildDependencyGraph(rootPom);
+        } else {
+            next.buildDependencyGraph(rootPom, analyzer.getPomEntries(), changedPoms);
+        }
+        analyzer = next;
+        graphCommit = head;
+        return next;
+    }
+
+    private void deleteSocket(Path socket) {
+        try {
+            Files.deleteIfExists(socket);
+        } catch (IOException e) {
+            log.warn("Could not delete " + socket + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package uk.anbu.maven.monorepo;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the modules changed on each of many heads since its merge base with a paired base, e.g. every open pull
+ * request against main. All merge bases are computed on one RevWalk, so the commits the histories share are
+ * parsed once. A pair whose merge base and head trees were compared before reuses that comparison, and a module
+ * directory whose two trees were compared for an earlier pair is not walked again. The cost grows with the
+ * distinct module trees, not with the number of pairs.
+ */
+public class PairChangeDetector {
+
+    public record Pair(String base, String head) {
+
+        // base...head, the notation git uses for the changes of head since its merge base with base
+        public static Pair parse(String spec) {
+            int separator = spec.indexOf("...");
+            if (separator <= 0 || separator + 3 >= spec.length()) {
+                throw new IllegalArgumentException("Expected base...head but got '" + spec + "'");
+            }
+            return new Pair(spec.substring(0, separator).trim(), spec.substring(separator + 3).trim());
+        }
+
+        @Override
+        public String toString() {
+            return base + "..." + head;
+        }
+    }
+
+    /**
+     * The merge base and the modules changed since, with the kinds of their changes, or the reason the pair
+     * could not be compared.
+     */
+    public record Result(Pair pair, String mergeBase, List<String> changedModules,
+                         Map<String, Set<ChangeKind>> changeKinds, String error) {
+
+        // Changed modules whose changes, e.g. to tests or docs only, leave their published artifact as it was
+        public Set<String> artifactUnchanged() {
+            Set<String> modules = new LinkedHashSet<>();
+            changeKinds.forEach((module, kinds) -> {
+                if (kinds.stream().noneMatch(ChangeKind::affectsArtifact)) {
+                    modules.add(module);
+                }
+            });
+            return modules;
+        }
+    }
+
+    private record TreePair(ObjectId oldTree, ObjectId newTree) {
+    }
+
+    private record Diff(List<String> changedModules, Map<String, Set<ChangeKind>> changeKinds) {
+    }
+
+    private final Repository repository;
+    private final ModuleChangeDetector detector;
+    private final Map<List<ObjectId>, ObjectId> mergeBases = new HashMap<>();
+    private final Map<TreePair, Diff> diffs = new HashMap<>();
+    private int entriesCompared;
+
+    public PairChangeDetector(Repository repository, ModuleChangeDetector detector) {
+        this.repository = repository;
+        this.detector = detector;
+        detector.reuseModuleSubtrees();
+    }
+
+    public List<Result> detect(List<Pair> pairs) throws IOException {
+        List<Result> results = new ArrayList<>();
+        try (ObjectReader reader = repository.newObjectReader();
+             RevWalk walk = new RevWalk(reader)) {
+            for (Pair pair : pairs) {
+                results.add(detect(walk, reader, pair));
+            }
+        }
+        return results;
+    }
+
+    private Result detect(RevWalk walk, ObjectReader reader, Pair pair) throws IOException {
+        ObjectId base = repository.resolve(pair.base() + "^{commit}");
+        ObjectId head = repository.resolve(pair.head() + "^{commit}");
+        if (base == null || head == null) {
+            return failed(pair, "Unknown revision " + (base == null ? pair.base() : pair.head()));
+        }
+
+        List<ObjectId> commits = List.of(base, head);
+        ObjectId mergeBase = mergeBases.get(commits);
+        if (mergeBase == null) {
+            // resetting keeps every commit parsed so far, so histories shared by the pairs are walked once
+            walk.reset();
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            walk.markStart(walk.parseCommit(base));
+            walk.markStart(walk.parseCommit(head));
+            RevCommit found = walk.next();
+            if (found == null) {
+                return failed(pair, "No merge base of " + pair.base() + " and " + pair.head());
+            }
+            mergeBase = found.toObjectId();
+            mergeBases.put(commits, mergeBase);
+        }
+
+        var trees = new TreePair(walk.parseCommit(mergeBase).getTree().toObjectId(),
+                walk.parseCommit(head).getTree().toObjectId());
+        Diff diff = diffs.get(trees);
+        if (diff == null) {
+            Set<String> changed = detector.findChangedModules(reader, trees.oldTree(), trees.newTree());
+            entriesCompared += detector.getEntriesCompared();
+            diff = new Diff(List.copyOf(changed), detector.getChangeKinds());
+            diffs.put(trees, diff);
+        }
+        return new Result(pair, mergeBase.getName(), diff.changedModules(), diff.changeKinds(), null);
+    }
+
+    private static Result failed(Pair pair, String error) {
+        return new Result(pair, null, List.of(), Map.of(), error);
+    }
+
+    public int getMergeBasesComputed() {
+        return mergeBases.size();
+    }
+
+    public int getTreeDiffsComputed() {
+        return diffs.size();
+    }
+
+    public int getEntriesCompared() {
+        return entriesCompared;
+    }
+}
@@ -0,0 +1,426 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bumps module versions by editing pom.xml text in place, so formatting is preserved and no Maven process is
+ * forked. Matching {@code <parent>} and {@code <dependency>} versions in other modules are updated in the same pass,
+ * in the sections versions:set updates: dependencies, dependency management and plugin dependencies.
+ */
+public class PomVersionRewriter {
+
+    private static final Pattern SEMANTIC_VERSION = Pattern.compile("(\\d+)\\.(\\d+)\\.(\\d+)");
+    private static final Pattern NUMBERED_VERSION = Pattern.compile("(\\d+(?:\\.\\d+)*)(.*)");
+    // Where versions:set updates dependency versions, the same places with or without a profile around them
+    private static final Pattern DEPENDENCIES_PATH = Pattern.compile(
+            "project(/profiles/profile)?((/dependencyManagement)?|/build(/pluginManagement)?/plugins/plugin)"
+                    + "/dependencies");
+
+    public record Result(Map<String, String> newVersions, List<String> unsupported) {}
+
+    private record Span(int start, int end, String value) {}
+
+    private record Reference(String groupId, String artifactId, Span version) {}
+
+    private record VersionChange(String oldVersion, String newVersion) {}
+
+    private static class PomFile {
+        private final File file;
+        private final String text;
+        private String groupId;
+        private String artifactId;
+        private Span version;
+        private Reference parent;
+        private final List<Reference> dependencies = new ArrayList<>();
+        private final List<String> modules = new ArrayList<>();
+        private boolean unreadable;
+
+        private PomFile(File file, String text) {
+            this.file = file;
+            this.text = text;
+        }
+
+        private DependencyUpdateAnalyzer.Module module() {
+            var effectiveGroupId = groupId != null ? groupId : parent != null ? parent.groupId() : null;
+            if (effectiveGroupId == null || artifactId == null) {
+                return null;
+            }
+            return new DependencyUpdateAnalyzer.Module(effectiveGroupId, artifactId);
+        }
+    }
+
+    private final Log log;
+    private final File basedir;
+    private final RunReport runReport;
+
+    public PomVersionRewriter(Log log, File basedir) {
+        this(log, basedir, new RunReport());
+    }
+
+    // Times every module's version decision and every POM rewrite in the run report
+    public PomVersionRewriter(Log log, File basedir, RunReport runReport) {
+        this.log = log;
+        this.basedir = basedir;
+        this.runReport = runReport;
+    }
+
+    public static Optional<String> nextVersion(String currentVersion) {
+        if (currentVersion == null) {
+            return Optional.empty();
+        }
+        Matcher matcher = SEMANTIC_VERSION.matcher(currentVersion);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        int major = Integer.parseInt(matcher.group(1));
+        int minor = Integer.parseInt(matcher.group(2));
+        int patch = Integer.parseInt(matcher.group(3));
+        return Optional.of(String.format("%d.%d.%d", major, minor, patch + 1));
+    }
+
+    /**
+     * The version after any version that starts with dot-separated numbers: the last of those numbers is
+     * incremented and a qualifier is kept, so 1.0-SNAPSHOT becomes 1.1-SNAPSHOT and 2.1 becomes 2.2.
+     */
+    public static Optional<String> nextNumberedVersion(String currentVersion) {
+        if (currentVersion == null) {
+            return Optional.empty();
+        }
+        Matcher matcher = NUMBERED_VERSION.matcher(currentVersion);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        String numbers = matcher.group(1);
+        int last = numbers.lastIndexOf('.') + 1;
+        long incremented = Long.parseLong(numbers.substring(last)) + 1;
+        return Optional.of(numbers.substring(0, last) + incremented + matcher.group(2));
+    }
+
+    // The next version as both the in-place rewrite and the forked versions:set give it
+    public static Optional<String> nextModuleVersion(String currentVersion) {
+        return nextVersion(currentVersion).or(() -> nextNumberedVersion(currentVersion));
+    }
+
+    /**
+     * Modules with a version that does not start with a number are reported as unsupported, and so are all
+     * modules when a POM of the tree cannot be scanned; modules whose version cannot be read are skipped with a
+     * warning.
+     */
+    public Result incrementVersions(Collection<String> moduleNames) {
+        Map<File, PomFile> poms = new LinkedHashMap<>();
+        loadRecursively(new File(basedir, "pom.xml"), poms);
+        for (String moduleName : moduleNames) {
+            File pomFile = canonical(new File(new File(basedir, moduleName), "pom.xml"));
+            if (!poms.containsKey(pomFile) && pomFile.isFile()) {
+                poms.put(pomFile, load(pomFile));
+            }
+        }
+        if (poms.values().stream().anyMatch(pom -> pom.unreadable)) {
+            // a POM left out of the rewrite could keep a dependency on an old version, versions:set sees them all
+            return new Result(Map.of(), List.copyOf(moduleNames));
+        }
+
+        Map<String, String> newVersions = new LinkedHashMap<>();
+        List<String> unsupported = new ArrayList<>();
+        Map<DependencyUpdateAnalyzer.Module, VersionChange> changes = new HashMap<>();
+        Map<String, PomFile> inheriting = new LinkedHashMap<>();
+
+        for (String moduleName : moduleNames) {
+            runReport.time("version-bump:" + moduleName, () -> {
+                planModule(moduleName, poms, newVersions, unsupported, changes, inheriting);
+                return null;
+            });
+        }
+
+        propagateToInheritingChildren(poms.values(), changes);
+        inheriting.forEach((moduleName, pom) -> {
+            if (pom.module() == null || !changes.containsKey(pom.module())) {
+                log.warn(String.format("%s takes its version from its parent %s:%s, which is not incremented, so its "
+                        + "version stays the same", moduleName, pom.parent.groupId(), pom.parent.artifactId()));
+                newVersions.put(moduleName, "skipped");
+            }
+        });
+
+        int rewritten = 0;
+        var root = canonical(basedir).toPath();
+        for (PomFile pom : poms.values()) {
+            String directory = root.relativize(pom.file.getParentFile().toPath()).toString()
+                    .replace(File.separatorChar, '/');
+            if (runReport.time("version-rewrite:" + directory, () -> rewrite(pom, changes))) {
+                rewritten++;
+            }
+        }
+        log.info(String.format("Rewrote versions in %d of %d pom.xml files", rewritten, poms.size()));
+        return new Result(newVersions, unsupported);
+    }
+
+    // Decides the new version of one module, or why it keeps its version
+    private void planModule(String moduleName, Map<File, PomFile> poms, Map<String, String> newVersions,
+                            List<String> unsupported, Map<DependencyUpdateAnalyzer.Module, VersionChange> changes,
+                            Map<String, PomFile> inheriting) {
+        File moduleDir = new File(basedir, moduleName);
+        if (!moduleDir.exists() || !moduleDir.isDirectory()) {
+            log.warn("Module directory not found: " + moduleDir.getAbsolutePath());
+            return;
+        }
+        File pomFile = canonical(new File(moduleDir, "pom.xml"));
+        PomFile pom = poms.get(pomFile);
+        if (pom != null && pom.version == null && pom.parent != null) {
+            // follows its parent's version, decided once the bumped parents are known
+            inheriting.put(moduleName, pom);
+            newVersions.put(moduleName, "inherited");
+            return;
+        }
+        if (pom == null) {
+            log.warn("No pom.xml in " + moduleDir.getAbsolutePath() + ", not incrementing its version");
+            newVersions.put(moduleName, "skipped");
+            return;
+        }
+        if (pom.version == null || pom.module() == null) {
+            log.warn("No version or coordinates in " + pomFile + ", not incrementing its version");
+            newVersions.put(moduleName, "skipped");
+            return;
+        }
+        if (pom.version.value().startsWith("${")) {
+            newVersions.put(moduleName, "skipped");
+            return;
+        }
+        var newVersion = nextModuleVersion(pom.version.value());
+        if (newVersion.isEmpty()) {
+            unsupported.add(moduleName);
+            return;
+        }
+        changes.put(pom.module(), new VersionChange(pom.version.value(), newVersion.get()));
+        newVersions.put(moduleName, newVersion.get());
+    }
+
+    // Children whose version follows their parent move with it, as versions:set would do.
+    private static void propagateToInheritingChildren(Collection<PomFile> poms,
+                                                      Map<DependencyUpdateAnalyzer.Module, VersionChange> changes) {
+        boolean added = true;
+        while (added) {
+            added = false;
+            for (PomFile pom : poms) {
+                var module = pom.module();
+                if (module == null || pom.parent == null || pom.parent.groupId() == null
+                        || pom.parent.artifactId() == null || changes.containsKey(module)) {
+                    continue;
+                }
+                var parentChange = changes.get(new DependencyUpdateAnalyzer.Module(pom.parent.groupId(), pom.parent.artifactId()));
+                if (parentChange == null) {
+                    continue;
+                }
+                if (pom.version == null || pom.version.value().equals(parentChange.oldVersion())) {
+                    changes.put(module, parentChange);
+                    added = true;
+                }
+            }
+        }
+    }
+
+    @SneakyThrows
+    private boolean rewrite(PomFile pom, Map<DependencyUpdateAnalyzer.Module, VersionChange> changes) {
+        List<Map.Entry<Span, String>> edits = new ArrayList<>();
+
+        var ownChange = pom.module() != null ? changes.get(pom.module()) : null;
+        if (ownChange != null && pom.version != null && pom.version.value().equals(ownChange.oldVersion())) {
+            edits.add(Map.entry(pom.version, ownChange.newVersion()));
+        }
+        List<Reference> references = new ArrayList<>(pom.dependencies);
+        if (pom.parent != null) {
+            references.add(pom.parent);
+        }
+        for (Reference reference : references) {
+            if (reference.version() == null || reference.groupId() == null || reference.artifactId() == null) {
+                continue;
+            }
+            var change = changes.get(new DependencyUpdateAnalyzer.Module(
+                    resolve(pom, reference.groupId()), resolve(pom, reference.artifactId())));
+            if (change != null && reference.version().value().equals(change.oldVersion())) {
+                edits.add(Map.entry(reference.version(), change.newVersion()));
+            }
+        }
+        if (edits.isEmpty()) {
+            return false;
+        }
+
+        edits.sort(Comparator.comparingInt((Map.Entry<Span, String> edit) -> edit.getKey().start()).reversed());
+        StringBuilder text = new StringBuilder(pom.text);
+        for (var edit : edits) {
+            text.replace(edit.getKey().start(), edit.getKey().end(), edit.getValue());
+        }
+        Files.writeString(pom.file.toPath(), text, StandardCharsets.UTF_8);
+        return true;
+    }
+
+    // Sibling dependencies often name their group through the project's own coordinates
+    private static String resolve(PomFile pom, String value) {
+        return switch (value) {
+            case "${project.groupId}", "${pom.groupId}" -> pom.module() != null ? pom.module().groupId() : value;
+            case "${project.parent.groupId}" -> pom.parent != null ? pom.parent.groupId() : value;
+            default -> value;
+        };
+    }
+
+    private void loadRecursively(File pomFile, Map<File, PomFile> poms) {
+        File canonicalPom = canonical(pomFile);
+        if (poms.containsKey(canonicalPom) || !canonicalPom.isFile()) {
+            return;
+        }
+        PomFile pom = load(canonicalPom);
+        poms.put(canonicalPom, pom);
+        for (String module : pom.modules) {
+            File moduleFile = new File(canonicalPom.getParentFile(), module);
+            loadRecursively(moduleFile.isFile() ? moduleFile : new File(moduleFile, "pom.xml"), poms);
+        }
+    }
+
+    @SneakyThrows
+    private static File canonical(File file) {
+        return file.getCanonicalFile();
+    }
+
+    @SneakyThrows
+    private PomFile load(File pomFile) {
+        PomFile pom = new PomFile(pomFile, Files.readString(pomFile.toPath(), StandardCharsets.UTF_8));
+        try {
+            scan(pom);
+        } catch (IllegalStateException e) {
+            log.warn("Cannot rewrite " + pomFile + " in place, falling back to versions:set: " + e.getMessage());
+            pom.unreadable = true;
+        }
+        return pom;
+    }
+
+    private static class Element {
+        private final String name;
+        private final int contentStart;
+        private boolean hasChildren;
+        private final Map<String, Span> leaves = new HashMap<>();
+
+        private Element(String name, int contentStart) {
+            this.name = name;
+            this.contentStart = contentStart;
+        }
+    }
+
+    // Minimal scanner for well-formed POMs: records offsets of leaf elements, ignores attributes and entities.
+    // Throws IllegalStateException on markup it cannot follow.
+    private static void scan(PomFile pom) {
+        String text = pom.text;
+        Deque<Element> stack = new ArrayDeque<>();
+        int position = 0;
+        while (true) {
+            int open = text.indexOf('<', position);
+            if (open < 0) {
+                return;
+            }
+            if (text.startsWith("<!--", open)) {
+                position = skipPast(text, open, "-->");
+            } else if (text.startsWith("<![CDATA[", open)) {
+                position = skipPast(text, open, "]]>");
+            } else if (text.startsWith("<?", open)) {
+                position = skipPast(text, open, "?>");
+            } else if (text.startsWith("<!", open)) {
+                position = skipPast(text, open, ">");
+            } else if (text.startsWith("</", open)) {
+                position = skipPast(text, open, ">");
+                String name = text.substring(open + 2, position - 1).trim();
+                if (stack.isEmpty() || !stack.peek().name.equals(name)) {
+                    throw new IllegalStateException("Unbalanced </" + name + "> at offset " + open);
+                }
+                Element element = stack.pop();
+                if (!element.hasChildren) {
+                    Span span = trimmed(text, element.contentStart, open);
+                    Element parent = stack.peek();
+                    if (parent != null) {
+                        parent.leaves.put(element.name, span);
+                    }
+                    onLeaf(pom, stack, element.name, span);
+                } else {
+                    onElement(pom, stack, element);
+                }
+            } else {
+                int close = skipPast(text, open, ">");
+                String tag = text.substring(open + 1, close - 1).trim();
+                boolean selfClosing = tag.endsWith("/");
+                String name = tag.split("[\\s/]", 2)[0];
+                if (!stack.isEmpty()) {
+                    stack.peek().hasChildren = true;
+                }
+                if (!selfClosing) {
+                    stack.push(new Element(name, close));
+                }
+                position = close;
+            }
+        }
+    }
+
+    private static void onLeaf(PomFile pom, Deque<Element> stack, String name, Span span) {
+        if (stack.size() == 1 && "project".equals(stack.peek().name)) {
+            switch (name) {
+                case "groupId" -> pom.groupId = span.value();
+                case "artifactId" -> pom.artifactId = span.value();
+                case "version" -> pom.version = span;
+                default -> { }
+            }
+        } else if (stack.size() == 2 && "module".equals(name) && "modules".equals(stack.peek().name)) {
+            pom.modules.add(span.value());
+        }
+    }
+
+    private static void onElement(PomFile pom, Deque<Element> stack, Element element) {
+        var groupId = element.leaves.get("groupId");
+        var artifactId = element.leaves.get("artifactId");
+        var reference = new Reference(groupId != null ? groupId.value() : null,
+                artifactId != null ? artifactId.value() : null,
+                element.leaves.get("version"));
+        if ("parent".equals(element.name) && stack.size() == 1) {
+            pom.parent = reference;
+        } else if ("dependency".equals(element.name) && DEPENDENCIES_PATH.matcher(path(stack)).matches()) {
+            pom.dependencies.add(reference);
+        }
+    }
+
+    // Names of the open elements from the root down, e.g. project/dependencyManagement/dependencies
+    private static String path(Deque<Element> stack) {
+        List<String> names = new ArrayList<>();
+        stack.descendingIterator().forEachRemaining(element -> names.add(element.name));
+        return String.join("/", names);
+    }
+
+    private static int skipPast(String text, int from, String terminator) {
+        int end = text.indexOf(terminator, from);
+        if (end < 0) {
+            throw new IllegalStateException("Unterminated markup at offset " + from);
+        }
+        return end + terminator.length();
+    }
+
+    private static Span trimmed(String text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return new Span(start, end, text.substring(start, end));
+    }
+}
@@ -0,0 +1,102 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.slf4j.LoggerFactory;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Narrows the reactor of the running build to the modules changed since the last successful build and their
+ * dependents, so no second Maven invocation with {@code -pl} is needed. Enabled with {@code -Dmonorepo.prune};
+ * with {@code -Dmonorepo.prune.alsoMake} the upstream projects of the kept ones are built as well, like
+ * {@code -am}. Only active when the plugin is declared with {@code <extensions>true</extensions>}.
+ */
+@Named("monorepo-build-prune")
+@Singleton
+public class ReactorPruner extends AbstractMavenLifecycleParticipant {
+
+    private final Slf4jLog log = new Slf4jLog(LoggerFactory.getLogger(ReactorPruner.class));
+
+    @Override
+    public void afterProjectsRead(MavenSession session) {
+        MavenProject topLevelProject = session.getTopLevelProject();
+        var parameters = AnalysisSettings.Parameters.of(session);
+        if (!Boolean.parseBoolean(parameters.property("monorepo.prune", "false")) || topLevelProject == null
+                || topLevelProject.getModules().isEmpty()) {
+            return;
+        }
+        File root = topLevelProject.getBasedir();
+        if (!GitHelper.isRepository(root)) {
+            log.warn("Not pruning the reactor, " + root + " is not the root of a git repository");
+            return;
+        }
+
+        RunReport runReport = new RunReport();
+        List<MavenProject> allProjects = session.getAllProjects();
+        AnalysisSettings settings = AnalysisSettings.resolve(parameters);
+        GitHelper gitHelper = new GitHelper(log, root, settings.changeDetectionOptions(), new ModelCache(), runReport);
+        gitHelper.setModuleTrie(ModuleTrie.fromProjects(root, allProjects));
+        var analysis = analyze(gitHelper, root, allProjects, runReport);
+        if (parameters.flag("shareAnalysis", "monorepo.shareAnalysis", true)) {
+            // the goals of this build that analyze with the same settings take these changes over
+            AbstractMonorepoMojo.publishChanges(session, settings.analysisKey(root), analysis);
+        }
+        List<String> changedModules = analysis.changedModules();
+        if (changedModules == null) {
+            log.warn("Not pruning the reactor, no baseline to compare against");
+            return;
+        }
+
+        Set<String> kept = new HashSet<>();
+        if (analysis.hasChanges()) {
+            DependencyUpdateAnalyzer analyzer = analysis.analyzer();
+            Set<Module> affected = analysis.affectedModules(runReport);
+            Set<Module> toBuild = !parameters.flag("skipInstalled", "monorepo.skipInstalled", true)
+                    ? affected
+                    : runReport.time("fingerprints", () -> ModuleFingerprints.skipInstalled(affected, gitHelper,
+                            analyzer, session.getRequest().getLocalRepositoryPath(), log));
+            toBuild.forEach(module -> kept.addAll(analyzer.findProjectDirectories(module)));
+        }
+
+        Set<MavenProject> pruned = new LinkedHashSet<>();
+        for (MavenProject project : session.getProjects()) {
+            if (project == topLevelProject || kept.contains(ModuleTrie.modulePath(root, project.getBasedir()))) {
+                pruned.add(project);
+            }
+        }
+        if (Boolean.parseBoolean(parameters.property("monorepo.prune.alsoMake", "false"))) {
+            for (MavenProject project : List.copyOf(pruned)) {
+                pruned.addAll(session.getProjectDependencyGraph().getUpstreamProjects(project, true));
+            }
+        }
+        // keep the reactor order, the dependency graph is rebuilt from this list
+        List<MavenProject> projects = session.getProjects().stream().filter(pruned::contains).toList();
+        log.info(String.format("Pruned the reactor to %d of %d projects affected by changes in %s",
+                projects.size(), session.getProjects().size(), changedModules));
+        session.setProjects(projects);
+
+        runReport.increment("projects-kept", projects.size());
+        runReport.write("prune", new File(topLevelProject.getBuild().getDirectory(), "monorepo-build/run-report.json"),
+                new File(gitHelper.getStateDirectory(), "run-history.jsonl"));
+    }
+
+    private AbstractMonorepoMojo.ChangeAnalysis analyze(GitHelper gitHelper, File root, List<MavenProject> allProjects,
+                                                        RunReport runReport) {
+        List<String> changedModules = gitHelper.changedModuleList();
+        if (changedModules == null || changedModules.isEmpty() && !gitHelper.hasHiddenChanges()) {
+            return AbstractMonorepoMojo.ChangeAnalysis.withoutGraph(gitHelper, changedModules);
+        }
+        DependencyUpdateAnalyzer analyzer = new DependencyUpdateAnalyzer(new ModelCache(), log, runReport);
+        analyzer.buildDependencyGraph(root, allProjects);
+        return AbstractMonorepoMojo.ChangeAnalysis.withGraph(gitHelper, changedModules, analyzer);
+    }
+}
@@ -0,0 +1,101 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Wall time per phase and counters for one plugin run. Phases that run more than once accumulate, and all
+ * methods may be called from several threads. The report is written as a single JSON object, and appended
+ * as one line to a history file so trends can be followed across runs.
+ */
+public class RunReport {
+
+    @FunctionalInterface
+    public interface Phase<T> {
+        T run() throws Exception;
+    }
+
+    private final long started = System.nanoTime();
+    private final Instant startedAt = Instant.now();
+    private final Map<String, AtomicLong> phaseNanos = new LinkedHashMap<>();
+    private final Map<String, AtomicLong> counters = new LinkedHashMap<>();
+
+    @SneakyThrows
+    public <T> T time(String phase, Phase<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.run();
+        } finally {
+            entry(phaseNanos, phase).addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    public void increment(String counter, long delta) {
+        entry(counters, counter).addAndGet(delta);
+    }
+
+    public long getCounter(String counter) {
+        synchronized (counters) {
+            AtomicLong value = counters.get(counter);
+            return value == null ? 0 : value.get();
+        }
+    }
+
+    private static AtomicLong entry(Map<String, AtomicLong> values, String key) {
+        synchronized (values) {
+            return values.computeIfAbsent(key, k -> new AtomicLong());
+        }
+    }
+
+    public String toJson(String goal) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"goal\":").append(Json.quote(goal))
+                .append(",\"startedAt\":").append(Json.quote(startedAt.toString()))
+                .append(",\"totalMillis\":").append(millis(System.nanoTime() - started))
+                .append(",\"phases\":{");
+        synchronized (phaseNanos) {
+            appendAll(json, phaseNanos, RunReport::millis);
+        }
+        json.append("},\"counters\":{");
+        synchronized (counters) {
+            appendAll(json, counters, String::valueOf);
+        }
+        return json.append("}}").toString();
+    }
+
+    @SneakyThrows
+    public void write(String goal, File reportFile, File historyFile) {
+        String json = toJson(goal);
+        reportFile.getParentFile().mkdirs();
+        Files.writeString(reportFile.toPath(), json + System.lineSeparator(), StandardCharsets.UTF_8);
+        historyFile.getParentFile().mkdirs();
+        Files.writeString(historyFile.toPath(), json + System.lineSeparator(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void appendAll(StringBuilder json, Map<String, AtomicLong> values,
+                                  LongFunction<String> format) {
+        boolean first = true;
+        for (var entry : values.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            json.append(Json.quote(entry.getKey())).append(':').append(format.apply(entry.getValue().get()));
+            first = false;
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,93 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static uk.anbu.maven.monorepo.BuildPlanMojo.projectList;
+import static uk.anbu.maven.monorepo.IncrementChangedModuleVersionMojo.extracted;
+
+/**
+ * Splits the modules affected since the last successful build over a number of CI executors, balancing them
+ * on the build times recorded by {@link BuildDurationRecorder}. Every executor gets a file with one
+ * {@code -pl} line per wave of the build plan; an empty line means it has nothing to build in that wave.
+ */
+@Mojo(name = "shard", defaultPhase = LifecyclePhase.INITIALIZE, requiresProject = false)
+public class ShardMojo extends AbstractMonorepoMojo {
+
+    @Parameter(property = "monorepo.shards", defaultValue = "2")
+    private int shards;
+
+    // Defaults to target/monorepo-build/shards
+    @Parameter(property = "monorepo.shardDirectory")
+    private File shardDirectory;
+
+    @Override
+    @SneakyThrows
+    public void execute() {
+        if (gitDir == null
+                && extracted(getLog(), project.getPackaging(), project.getModules(), basedir.getAbsolutePath())) {
+            return;
+        }
+
+        ModelCache modelCache = new ModelCache();
+        RunReport runReport = new RunReport();
+        GitHelper gitHelper = newGitHelper(modelCache, runReport);
+        try {
+            BuildDurations durations = BuildDurations.load(
+                    new File(gitHelper.getStateDirectory(), BuildDurations.FILE_NAME));
+            if (durations.isEmpty()) {
+                getLog().warn("No recorded build durations, modules are assumed to take equally long. "
+                        + "Declare the plugin with <extensions>true</extensions> to record them.");
+            }
+
+            ChangeAnalysis analysis = analyzeChanges(gitHelper, modelCache, runReport);
+            ShardPlan shardPlan;
+            Function<Module, List<String>> directories;
+            if (!analysis.hasChanges()) {
+                getLog().info("No modules changed since last successful build.");
+                shardPlan = ShardPlan.of(new BuildPlan(List.of(), List.of(), List.of()), shards, module -> 0);
+                directories = module -> List.of();
+            } else {
+                DependencyUpdateAnalyzer analyzer = analysis.analyzer();
+                Set<Module> affected = skipInstalled(analysis.affectedModules(runReport), gitHelper, analyzer, runReport);
+                BuildPlan plan = runReport.time("build-plan", () -> BuildPlan.of(analyzer.getModuleGraph(), affected));
+                directories = analyzer::findProjectDirectories;
+                shardPlan = runReport.time("sharding", () -> ShardPlan.of(plan, shards,
+                        module -> durations.estimate(analyzer.findProjectDirectories(module))));
+            }
+            writeShards(shardPlan, directories);
+        } finally {
+            writeRunReport("shard", runReport, gitHelper);
+        }
+    }
+
+    @SneakyThrows
+    private void writeShards(ShardPlan shardPlan, Function<Module, List<String>> directories) {
+        File directory = shardDirectory != null ? shardDirectory : new File(buildDirectory(), "monorepo-build/shards");
+        directory.mkdirs();
+        for (int i = 0; i < shardPlan.shards().size(); i++) {
+            ShardPlan.Shard shard = shardPlan.shards().get(i);
+            List<String> lines = new ArrayList<>();
+            for (List<Module> wave : shard.waves()) {
+                lines.add(projectList(wave, directories));
+            }
+            File file = new File(directory, "shard-" + (i + 1) + ".txt");
+            Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+            getLog().info(String.format("Shard %d: %d modules, estimated %d ms, written to %s", i + 1,
+                    shard.waves().stream().mapToInt(List::size).sum(), shard.estimatedMillis(), file));
+        }
+        getLog().info(String.format("Estimated wall time over %d shards: %d ms",
+                shardPlan.shards().size(), shardPlan.estimatedMillis()));
+    }
+}
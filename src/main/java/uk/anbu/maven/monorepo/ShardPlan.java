@@ -0,0 +1,63 @@
+package uk.anbu.maven.monorepo;
+
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * Splits a build plan over a fixed number of executors. Within each wave the modules are handed out longest
+ * first, each to the executor with the least work in that wave so far, so the executors finish a wave at
+ * about the same time before moving on to the next one.
+ */
+public record ShardPlan(List<Shard> shards, long estimatedMillis) {
+
+    // waves line up with the waves of the build plan, a shard can be idle in some of them
+    public record Shard(List<List<Module>> waves, long estimatedMillis) {}
+
+    public static ShardPlan of(BuildPlan plan, int shardCount, ToLongFunction<Module> cost) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be at least 1, was " + shardCount);
+        }
+        List<List<List<Module>>> shardWaves = new ArrayList<>();
+        long[] busy = new long[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardWaves.add(new ArrayList<>());
+        }
+
+        long estimated = 0;
+        for (List<Module> wave : plan.waves()) {
+            long[] load = new long[shardCount];
+            PriorityQueue<Integer> leastLoaded = new PriorityQueue<>(
+                    Comparator.<Integer>comparingLong(shard -> load[shard]).thenComparing(shard -> shard));
+            for (int i = 0; i < shardCount; i++) {
+                leastLoaded.add(i);
+                shardWaves.get(i).add(new ArrayList<>());
+            }
+            List<Module> longestFirst = wave.stream()
+                    .sorted(Comparator.comparingLong(cost).reversed())
+                    .toList();
+            for (Module module : longestFirst) {
+                int shard = leastLoaded.poll();
+                shardWaves.get(shard).get(shardWaves.get(shard).size() - 1).add(module);
+                load[shard] += cost.applyAsLong(module);
+                leastLoaded.add(shard);
+            }
+            long slowest = 0;
+            for (int i = 0; i < shardCount; i++) {
+                busy[i] += load[i];
+                slowest = Math.max(slowest, load[i]);
+            }
+            estimated += slowest;
+        }
+
+        List<Shard> shards = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new Shard(shardWaves.get(i).stream().map(List::copyOf).toList(), busy[i]));
+        }
+        return new ShardPlan(List.copyOf(shards), estimated);
+    }
+}
@@ -0,0 +1,84 @@
+package uk.anbu.maven.monorepo;
+
+import lombok.SneakyThrows;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.shared.invoker.DefaultInvocationRequest;
+import org.apache.maven.shared.invoker.DefaultInvoker;
+import org.apache.maven.shared.invoker.InvocationRequest;
+import org.apache.maven.shared.invoker.InvocationResult;
+
+import java.io.File;
+import java.util.List;
+
+import static uk.anbu.maven.monorepo.IncrementChangedModuleVersionMojo.extracted;
+
+/**
+ * Watches the working tree and prints the affected modules every time they change, see {@link ChangeWatcher}.
+ * With {@code monorepo.watch.goals} set, each new affected set is also built with those goals, narrowed to its
+ * projects with {@code -pl}. Runs until Ctrl-C.
+ */
+@Mojo(name = "watch")
+public class WatchMojo extends AbstractMonorepoMojo {
+
+    // Goals to run on the affected projects whenever they change, e.g. install; nothing is built when empty
+    @Parameter(property = "monorepo.watch.goals")
+    private List<String> goals = List.of();
+
+    // Milliseconds without file events before the affected set is recomputed
+    @Parameter(property = "monorepo.watch.debounce", defaultValue = "300")
+    private long debounce = 300;
+
+    @Override
+    @SneakyThrows
+    public void execute() {
+        if (gitDir != null || readFromGit) {
+            throw new MojoExecutionException("The watch goal follows the working tree, "
+                    + "monorepo.gitDir and monorepo.readFromGit are not supported");
+        }
+        if (extracted(getLog(), project.getPackaging(), project.getModules(), basedir.getAbsolutePath())) {
+            return;
+        }
+        new ChangeWatcher(getLog(), basedir, changeDetectionOptions(), new ModuleDiscovery(discoveryIgnores), debounce)
+                .watch(this::report);
+    }
+
+    private void report(ChangeWatcher.Snapshot snapshot) {
+        if (snapshot.changes().isEmpty()) {
+            getLog().info("No modules changed since last successful build.");
+            return;
+        }
+        getLog().info("Changed modules:");
+        snapshot.changes().forEach((module, kinds) -> getLog().info("- " + module + " " + kinds));
+        getLog().info("Affected projects: " + String.join(",", snapshot.projects()));
+        if (!goals.isEmpty() && !snapshot.projects().isEmpty()) {
+            build(snapshot.projects());
+        }
+    }
+
+    // A failed build is reported and the watch goes on
+    @SneakyThrows
+    private void build(List<String> projects) {
+        InvocationRequest request = new DefaultInvocationRequest();
+        request.setPomFile(new File(basedir, "pom.xml"));
+        request.addArgs(goals);
+        request.setProjects(projects);
+        request.setBatchMode(true);
+        request.setOffline(session.isOffline());
+        request.setMavenHome(new File(System.getProperty("maven.home")));
+        request.setLocalRepositoryDirectory(session.getRequest().getLocalRepositoryPath());
+        File userSettings = session.getRequest().getUserSettingsFile();
+        if (userSettings != null && userSettings.exists()) {
+            request.setUserSettingsFile(userSettings);
+        }
+        request.setOutputHandler(getLog()::info);
+        request.setErrorHandler(getLog()::error);
+
+        getLog().info("Running " + String.join(" ", goals) + " on " + projects.size() + " projects");
+        InvocationResult result = new DefaultInvoker().execute(request);
+        if (result.getExitCode() != 0) {
+            getLog().warn("Build failed with exit code " + result.getExitCode() + ", watching for further changes");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package uk.anbu.maven.monorepo;
+
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class AnalysisSettingsTest {
+
+    @TempDir
+    File root;
+
+    @Test
+    void defaultsMatchTheMojoParameters() {
+        var mojo = mojo();
+
+        assertEquals(mojo.analysisSettings().analysisKey(root), pruner(null, new Properties(), new Properties()));
+    }
+
+    @Test
+    void pluginConfigurationReachesThePrunerKey() {
+        var configuration = new Xpp3Dom("configuration");
+        configuration.addChild(element("fetchMode", "SHALLOW"));
+        configuration.addChild(element("fetchDepth", "20"));
+        var triggers = new Xpp3Dom("outsideModuleTriggers");
+        triggers.addChild(element("outsideModuleTrigger", "pom.xml"));
+        triggers.addChild(element("outsideModuleTrigger", " .mvn/** "));
+        configuration.addChild(triggers);
+        configuration.addChild(element("changeKindRules", "DOCS=*.txt,TEST=fixtures/**"));
+        configuration.addChild(element("useGraphIndex", "false"));
+        var projectProperties = new Properties();
+        // configuration wins over properties, as it does for the goals
+        projectProperties.setProperty("monorepo.fetchMode", "NONE");
+        projectProperties.setProperty("monorepo.classifyChanges", "false");
+
+        var mojo = mojo();
+        mojo.fetchMode = FetchMode.SHALLOW;
+        mojo.fetchDepth = 20;
+        mojo.outsideModuleTriggers = List.of("pom.xml", ".mvn/**");
+        mojo.changeKindRules = List.of("DOCS=*.txt", "TEST=fixtures/**");
+        mojo.useGraphIndex = false;
+        mojo.classifyChanges = false;
+
+        assertEquals(mojo.analysisSettings().analysisKey(root), pruner(configuration, new Properties(),
+                projectProperties));
+    }
+
+    @Test
+    void commandLineWinsOverProjectProperties() {
+        var properties = new Properties();
+        properties.setProperty("monorepo.discoveryIgnores", "target, build");
+        properties.setProperty("monorepo.cacheBaseline", "false");
+        var projectProperties = new Properties();
+        projectProperties.setProperty("monorepo.discoveryIgnores", "target");
+        projectProperties.setProperty("monorepo.gitDir", "repo.git");
+
+        var mojo = mojo();
+        mojo.discoveryIgnores = List.of("target", "build");
+        mojo.cacheBaseline = false;
+        mojo.gitDir = new File("repo.git");
+
+        assertEquals(mojo.analysisSettings().analysisKey(root), pruner(null, properties, projectProperties));
+        mojo.cacheBaseline = true;
+        assertNotEquals(mojo.analysisSettings().analysisKey(root), pruner(null, properties, projectProperties));
+    }
+
+    private AbstractMonorepoMojo.AnalysisKey pruner(Xpp3Dom configuration, Properties properties,
+                                                    Properties projectProperties) {
+        return AnalysisSettings.resolve(new AnalysisSettings.Parameters(configuration, properties, projectProperties))
+                .analysisKey(root);
+    }
+
+    private AbstractMonorepoMojo mojo() {
+        var mojo = new ListChangedModulesMojo();
+        mojo.basedir = root;
+        return mojo;
+    }
+
+    private static Xpp3Dom element(String name, String value) {
+        var element = new Xpp3Dom(name);
+        element.setValue(value);
+        return element;
+    }
+}
@@ -0,0 +1,76 @@
+package uk.anbu.maven.monorepo;
+
+import org.junit.jupiter.api.Test;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BuildPlanTest {
+
+    private final Map<Module, Set<Module>> dependencies = new LinkedHashMap<>();
+
+    @Test
+    void ordersModulesAfterTheirDependencies() {
+        module("a");
+        module("b", "a");
+        module("c", "a");
+        module("d", "b", "c");
+        module("x");
+
+        BuildPlan plan = plan("a", "b", "c", "d", "x");
+
+        assertEquals(List.of(List.of(m("a"), m("x")), List.of(m("b"), m("c")), List.of(m("d"))), plan.waves());
+        assertEquals(List.of(m("a"), m("b"), m("d")), plan.criticalPath());
+        assertEquals(List.of(), plan.cyclic());
+    }
+
+    @Test
+    void putsOnlyCycleMembersInTheCyclicWaveAndTheirDependentsAfter() {
+        module("a");
+        module("c", "a", "d");
+        module("d", "c");
+        module("e", "c");
+        module("f", "e");
+
+        BuildPlan plan = plan("a", "c", "d", "e", "f");
+
+        assertEquals(List.of(List.of(m("a")), List.of(m("c"), m("d")), List.of(m("e")), List.of(m("f"))),
+                plan.waves());
+        assertEquals(List.of(m("c"), m("d")), plan.cyclic());
+        assertEquals(List.of(m("a"), m("c"), m("e"), m("f")), plan.criticalPath());
+    }
+
+    @Test
+    void ordersCyclesThatDependOnEachOther() {
+        module("a", "b");
+        module("b", "a");
+        module("c", "a", "d");
+        module("d", "c");
+
+        BuildPlan plan = plan("a", "b", "c", "d");
+
+        assertEquals(List.of(List.of(m("a"), m("b")), List.of(m("c"), m("d"))), plan.waves());
+        assertEquals(List.of(m("a"), m("b"), m("c"), m("d")), plan.cyclic());
+    }
+
+    private void module(String artifactId, String... dependsOn) {
+        dependencies.put(m(artifactId), Set.of(Arrays.stream(dependsOn).map(BuildPlanTest::m)
+                .toArray(Module[]::new)));
+    }
+
+    private BuildPlan plan(String... artifactIds) {
+        return BuildPlan.of(new ModuleGraph(dependencies, new HashMap<>()),
+                Arrays.stream(artifactIds).map(BuildPlanTest::m).toList());
+    }
+
+    private static Module m(String artifactId) {
+        return new Module("g", artifactId);
+    }
+}
@@ -0,0 +1,60 @@
+package uk.anbu.maven.monorepo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChangeClassifierTest {
+
+    private final ChangeClassifier defaults = new ChangeClassifier(List.of());
+
+    @Test
+    void classifiesByTheDefaultRules() {
+        assertEquals(ChangeKind.POM, defaults.classify("pom.xml"));
+        assertEquals(ChangeKind.MAIN, defaults.classify("src/main/java/p/A.java"));
+        assertEquals(ChangeKind.RESOURCES, defaults.classify("src/main/resources/p/messages.properties"));
+        assertEquals(ChangeKind.TEST, defaults.classify("src/test/java/p/ATest.java"));
+        assertEquals(ChangeKind.TEST, defaults.classify("src/it/simple/pom.xml"));
+        assertEquals(ChangeKind.DOCS, defaults.classify("src/site/markdown/index.md"));
+        assertEquals(ChangeKind.DOCS, defaults.classify("docs/guide.txt"));
+        assertEquals(ChangeKind.DOCS, defaults.classify("README.md"));
+    }
+
+    @Test
+    void letsTheFirstMatchingDefaultWin() {
+        // MAIN=src/main/** comes before DOCS=**.md
+        assertEquals(ChangeKind.MAIN, defaults.classify("src/main/java/p/package.md"));
+        // RESOURCES=src/main/resources/** comes before MAIN=src/main/**
+        assertEquals(ChangeKind.RESOURCES, defaults.classify("src/main/resources/README.md"));
+    }
+
+    @Test
+    void checksConfiguredRulesBeforeTheDefaults() {
+        ChangeClassifier classifier = new ChangeClassifier(List.of(
+                "TEST=src/main/java/**/fixtures/**",
+                " DOCS = src/main/resources/help/** ",
+                "MAIN=scripts/**"));
+
+        assertEquals(ChangeKind.TEST, classifier.classify("src/main/java/p/fixtures/Sample.java"));
+        assertEquals(ChangeKind.MAIN, classifier.classify("src/main/java/p/A.java"));
+        assertEquals(ChangeKind.DOCS, classifier.classify("src/main/resources/help/index.html"));
+        assertEquals(ChangeKind.RESOURCES, classifier.classify("src/main/resources/app.properties"));
+        assertEquals(ChangeKind.MAIN, classifier.classify("scripts/release.sh"));
+    }
+
+    @Test
+    void classifiesAPathNoRuleMatchesAsOther() {
+        assertEquals(ChangeKind.OTHER, defaults.classify("build.sh"));
+        assertEquals(ChangeKind.OTHER, defaults.classify(".mvn/jvm.config"));
+        assertEquals(ChangeKind.OTHER, defaults.classify("src/assembly/bin.xml"));
+    }
+
+    @Test
+    void rejectsMalformedRules() {
+        assertThrows(IllegalArgumentException.class, () -> new ChangeClassifier(List.of("src/test/**")));
+        assertThrows(IllegalArgumentException.class, () -> new ChangeClassifier(List.of("TESTS=src/test/**")));
+    }
+}
@@ -0,0 +1,116 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DependencyGraphIndexTest {
+
+    @TempDir
+    Path root;
+
+    @TempDir
+    Path state;
+
+    private File indexFile;
+
+    @BeforeEach
+    void modules() throws IOException {
+        pom("", "<artifactId>root</artifactId><packaging>pom</packaging>"
+                + "<modules><module>a</module><module>b</module><module>c</module></modules>");
+        pom("a", "<artifactId>a</artifactId>");
+        pom("b", "<artifactId>b</artifactId>" + dependsOn("a"));
+        pom("c", "<artifactId>c</artifactId>");
+        indexFile = state.resolve("graph.idx").toFile();
+    }
+
+    @Test
+    void roundTripsThePomEntries() throws IOException {
+        var analyzer = analyzer();
+        analyzer.buildDependencyGraph(rootPom());
+
+        new DependencyGraphIndex("abc123", analyzer.getPomEntries()).save(indexFile);
+        Optional<DependencyGraphIndex> loaded = DependencyGraphIndex.load(indexFile);
+
+        assertTrue(loaded.isPresent());
+        assertEquals("abc123", loaded.get().commitId());
+        assertEquals(analyzer.getPomEntries(), loaded.get().entries());
+        // the temporary file was moved into place
+        try (var files = Files.list(state)) {
+            assertEquals(List.of(indexFile.toPath()), files.toList());
+        }
+    }
+
+    @Test
+    void replacesAnExistingIndex() {
+        var analyzer = analyzer();
+        analyzer.buildDependencyGraph(rootPom());
+
+        new DependencyGraphIndex("first", analyzer.getPomEntries()).save(indexFile);
+        new DependencyGraphIndex("second", analyzer.getPomEntries()).save(indexFile);
+
+        assertEquals(Optional.of("second"), DependencyGraphIndex.load(indexFile).map(DependencyGraphIndex::commitId));
+    }
+
+    @Test
+    void rereadsAPomWhoseModificationTimeChanged() throws IOException {
+        var analyzer = analyzer();
+        analyzer.buildDependencyGraph(rootPom());
+        new DependencyGraphIndex("abc123", analyzer.getPomEntries()).save(indexFile);
+
+        Path pom = pom("c", "<artifactId>c</artifactId>" + dependsOn("b"));
+        Files.setLastModifiedTime(pom, FileTime.fromMillis(Files.getLastModifiedTime(pom).toMillis() + 5000));
+
+        var refreshed = analyzer();
+        // git reports no changed POMs, only the modification time gives the edit away
+        refreshed.buildDependencyGraph(rootPom(), DependencyGraphIndex.load(indexFile).orElseThrow().entries(),
+                List.of());
+
+        assertEquals(Set.of(new Module("g", "b")), refreshed.getPomEntries().get("c/pom.xml").dependencies());
+        assertEquals(Set.of(new Module("g", "b"), new Module("g", "c")),
+                refreshed.findModulesToUpdate(List.of("b")));
+    }
+
+    @Test
+    void ignoresAMissingOrCorruptIndex() throws IOException {
+        assertEquals(Optional.empty(), DependencyGraphIndex.load(indexFile));
+
+        Files.writeString(indexFile.toPath(), "not an index");
+
+        assertEquals(Optional.empty(), DependencyGraphIndex.load(indexFile));
+    }
+
+    private DependencyUpdateAnalyzer analyzer() {
+        return new DependencyUpdateAnalyzer(new ModelCache(), new SystemStreamLog(), new RunReport());
+    }
+
+    private String rootPom() {
+        return root.resolve("pom.xml").toString();
+    }
+
+    private Path pom(String module, String content) throws IOException {
+        Path directory = root.resolve(module);
+        Files.createDirectories(directory);
+        return Files.writeString(directory.resolve("pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+                + "<groupId>g</groupId><version>1</version>" + content + "</project>");
+    }
+
+    private static String dependsOn(String artifactId) {
+        return "<dependencies><dependency><groupId>g</groupId><artifactId>" + artifactId
+                + "</artifactId><version>1</version></dependency></dependencies>";
+    }
+}
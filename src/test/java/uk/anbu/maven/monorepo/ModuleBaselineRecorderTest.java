@@ -0,0 +1,92 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ModuleBaselineRecorderTest {
+
+    @TempDir
+    Path root;
+
+    private DependencyUpdateAnalyzer analyzer;
+
+    @BeforeEach
+    void graph() throws IOException {
+        pom("", "<artifactId>root</artifactId><packaging>pom</packaging>"
+                + "<modules><module>a</module><module>b</module><module>c</module></modules>");
+        pom("a", "<artifactId>a</artifactId>");
+        pom("b", "<artifactId>b</artifactId>" + dependsOn("a"));
+        pom("c", "<artifactId>c</artifactId>" + dependsOn("b"));
+        analyzer = new DependencyUpdateAnalyzer(new ModelCache(), new SystemStreamLog(), new RunReport());
+        analyzer.buildDependencyGraph(root.resolve("pom.xml").toString());
+    }
+
+    @Test
+    void advancesEveryModuleOfAFullBuild() {
+        Set<String> all = Set.of("", "a", "b", "c");
+
+        assertEquals(List.of("a", "b", "c"), ModuleBaselineRecorder.modulesToAdvance(analyzer, all, all, null,
+                Set.of()));
+    }
+
+    @Test
+    void advancesAPrunedBuildWhoseLeftOutUpstreamIsUnchanged() {
+        Set<String> built = Set.of("", "b", "c");
+
+        assertEquals(List.of("b", "c"), ModuleBaselineRecorder.modulesToAdvance(analyzer, built, built,
+                Set.of("b"), Set.of()));
+    }
+
+    @Test
+    void keepsTheBaselineWhenALeftOutUpstreamChanged() {
+        Set<String> built = Set.of("", "b", "c");
+
+        assertEquals(List.of(), ModuleBaselineRecorder.modulesToAdvance(analyzer, built, built,
+                Set.of("a", "b"), Set.of()));
+    }
+
+    @Test
+    void keepsTheBaselineWhenNothingIsKnownAboutTheLeftOutUpstream() {
+        Set<String> built = Set.of("", "b", "c");
+
+        assertEquals(List.of(), ModuleBaselineRecorder.modulesToAdvance(analyzer, built, built, null, Set.of()));
+    }
+
+    @Test
+    void keepsTheBaselinesDownstreamOfAFailure() {
+        Set<String> built = Set.of("", "a", "b", "c");
+
+        assertEquals(List.of("a"), ModuleBaselineRecorder.modulesToAdvance(analyzer, built, Set.of("", "a", "c"),
+                Set.of(), Set.of()));
+    }
+
+    @Test
+    void keepsTheBaselinesOfModulesBuiltFromUncommittedChanges() {
+        Set<String> all = Set.of("", "a", "b", "c");
+
+        assertEquals(List.of("a"), ModuleBaselineRecorder.modulesToAdvance(analyzer, all, all, null,
+                analyzer.findModulesToUpdate(List.of("b"))));
+    }
+
+    private void pom(String module, String content) throws IOException {
+        Path directory = root.resolve(module);
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve("pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+                + "<groupId>g</groupId><version>1</version>" + content + "</project>");
+    }
+
+    private static String dependsOn(String artifactId) {
+        return "<dependencies><dependency><groupId>g</groupId><artifactId>" + artifactId
+                + "</artifactId><version>1</version></dependency></dependencies>";
+    }
+}
@@ -0,0 +1,144 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ModuleChangeDetectorTest {
+
+    @TempDir
+    Path root;
+
+    private Git git;
+    private ObjectId baseline;
+    private ModuleTrie trie;
+
+    @BeforeEach
+    void repository() throws Exception {
+        git = Git.init().setDirectory(root.toFile()).call();
+        pom("", "<modules><module>a</module><module>c</module></modules>");
+        pom("a", "<modules><module>b</module></modules>");
+        pom("a/b", "");
+        pom("c", "");
+        write("a/src/main/java/A.java", "class A {}");
+        write("a/b/src/main/java/B.java", "class B {}");
+        write("c/src/main/java/C.java", "class C {}");
+        write("docs/notes.txt", "notes");
+        baseline = commit();
+        trie = ModuleTrie.fromDeclaredModules(root.resolve("pom.xml").toFile(), new ModelCache());
+    }
+
+    @AfterEach
+    void close() {
+        git.close();
+    }
+
+    @Test
+    void stopsAtTheNestedModuleWhoseTreeDiffers() throws Exception {
+        write("a/b/src/main/java/B.java", "class B { int x; }");
+        ObjectId head = commit();
+
+        var detector = new ModuleChangeDetector(new SystemStreamLog(), trie, List.of());
+
+        assertEquals(Set.of("a/b"), changed(detector, head));
+        // a, then a/b, whose differing tree id is enough
+        assertEquals(2, detector.getEntriesCompared());
+    }
+
+    @Test
+    void classifiesNestedEditsByEnteringTheModule() throws Exception {
+        write("a/b/src/test/java/BTest.java", "class BTest {}");
+        ObjectId head = commit();
+
+        var detector = new ModuleChangeDetector(new SystemStreamLog(), trie, List.of(),
+                new ChangeClassifier(List.of()));
+
+        assertEquals(Set.of("a/b"), changed(detector, head));
+        assertEquals(Map.of("a/b", Set.of(ChangeKind.TEST)), detector.getChangeKinds());
+        // a, a/b, a/b/src, a/b/src/test, a/b/src/test/java and the file
+        assertEquals(6, detector.getEntriesCompared());
+    }
+
+    @Test
+    void marksTopLevelModulesWhenAnEditOutsideHitsATrigger() throws Exception {
+        pom("", "<modules><module>a</module><module>c</module></modules><description>changed</description>");
+        write("docs/notes.txt", "other notes");
+        ObjectId head = commit();
+
+        var detector = new ModuleChangeDetector(new SystemStreamLog(), trie, List.of("pom.xml"));
+
+        assertEquals(Set.of("a", "c"), changed(detector, head));
+        // docs, docs/notes.txt which matches no trigger, and pom.xml
+        assertEquals(3, detector.getEntriesCompared());
+    }
+
+    @Test
+    void ignoresEditsOutsideModulesWithoutTriggers() throws Exception {
+        write("docs/notes.txt", "other notes");
+        ObjectId head = commit();
+
+        var detector = new ModuleChangeDetector(new SystemStreamLog(), trie, List.of());
+
+        assertEquals(Set.of(), changed(detector, head));
+        assertEquals(1, detector.getEntriesCompared());
+    }
+
+    @Test
+    void reusesAModuleSubtreeOnlyWithTheSameKindsOnEntry() throws Exception {
+        write("a/src/test/java/ATest.java", "class ATest {}");
+        ObjectId testOnly = commit();
+        write(".mvn/extensions.xml", "<extensions/>");
+        ObjectId triggered = commit();
+        List<String> triggers = List.of(".mvn/**");
+
+        var reusing = new ModuleChangeDetector(new SystemStreamLog(), trie, triggers, new ChangeClassifier(List.of()));
+        reusing.reuseModuleSubtrees();
+        changed(reusing, testOnly);
+        Set<String> changed = changed(reusing, triggered);
+        var fresh = new ModuleChangeDetector(new SystemStreamLog(), trie, triggers, new ChangeClassifier(List.of()));
+
+        // .mvn sorts before a, so a enters its directory already changed by the trigger
+        assertEquals(changed(fresh, triggered), changed);
+        assertEquals(fresh.getChangeKinds(), reusing.getChangeKinds());
+        assertEquals(Map.of("a", Set.of(ChangeKind.OTHER), "c", Set.of(ChangeKind.OTHER)), reusing.getChangeKinds());
+    }
+
+    private Set<String> changed(ModuleChangeDetector detector, ObjectId head) throws Exception {
+        try (ObjectReader reader = git.getRepository().newObjectReader()) {
+            return detector.findChangedModules(reader, baseline, head);
+        }
+    }
+
+    private void write(String path, String content) throws Exception {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    private void pom(String module, String content) throws Exception {
+        write((module.isEmpty() ? "" : module + "/") + "pom.xml", "<project><modelVersion>4.0.0</modelVersion>"
+                + "<groupId>g</groupId><artifactId>" + (module.isEmpty() ? "root" : module.replace('/', '-'))
+                + "</artifactId><version>1</version><packaging>pom</packaging>" + content + "</project>");
+    }
+
+    private ObjectId commit() throws Exception {
+        git.add().addFilepattern(".").call();
+        PersonIdent author = new PersonIdent("test", "test@example.com");
+        return git.commit().setMessage("change").setAuthor(author).setCommitter(author).setSign(false).call()
+                .getTree().getId();
+    }
+}
@@ -0,0 +1,129 @@
+package uk.anbu.maven.monorepo;
+
+import org.junit.jupiter.api.Test;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ModuleGraphTest {
+
+    private final Map<Module, Set<Module>> dependencies = new LinkedHashMap<>();
+    private final Map<Module, Module> parents = new HashMap<>();
+
+    @Test
+    void diamond() {
+        module("a");
+        module("b", "a");
+        module("c", "a");
+        module("d", "b", "c");
+
+        assertMatchesBreadthFirstSearch();
+        assertEquals(Set.of(m("a"), m("b"), m("c"), m("d")), graph().findAffectedModules(List.of(m("a"))));
+        assertEquals(Set.of(m("b"), m("d")), graph().findAffectedModules(List.of(m("b"))));
+    }
+
+    @Test
+    void twoModuleCycle() {
+        module("a", "b");
+        module("b", "a");
+        module("c", "b");
+        module("x");
+
+        assertMatchesBreadthFirstSearch();
+        assertEquals(Set.of(m("a"), m("b"), m("c")), graph().findAffectedModules(List.of(m("a"))));
+    }
+
+    @Test
+    void selfLoop() {
+        module("a", "a");
+        module("b", "a");
+
+        assertMatchesBreadthFirstSearch();
+        assertEquals(List.of(m("b")), graph().getDependents(m("a")));
+        assertEquals(List.of(), graph().getDependencies(m("a")));
+    }
+
+    @Test
+    void changedChildAffectsItsParent() {
+        module("p");
+        module("c");
+        module("d", "p");
+        parents.put(m("c"), m("p"));
+
+        assertEquals(Set.of(m("c"), m("p"), m("d")), graph().findAffectedModules(List.of(m("c"))));
+    }
+
+    @Test
+    void randomGraphsWithCycles() {
+        Random random = new Random(42);
+        for (int run = 0; run < 50; run++) {
+            dependencies.clear();
+            int size = 2 + random.nextInt(30);
+            for (int i = 0; i < size; i++) {
+                Set<Module> moduleDependencies = new HashSet<>();
+                for (int j = random.nextInt(4); j > 0; j--) {
+                    moduleDependencies.add(m("m" + random.nextInt(size)));
+                }
+                dependencies.put(m("m" + i), moduleDependencies);
+            }
+            assertMatchesBreadthFirstSearch();
+        }
+    }
+
+    private void assertMatchesBreadthFirstSearch() {
+        ModuleGraph graph = graph();
+        for (Module module : dependencies.keySet()) {
+            assertEquals(naiveDependents(module), Set.copyOf(graph.getDependents(module)), "dependents of " + module);
+            assertEquals(naiveClosure(module), graph.findAffectedModules(List.of(module)), "closure of " + module);
+        }
+    }
+
+    private Set<Module> naiveDependents(Module module) {
+        Set<Module> dependents = new HashSet<>();
+        dependencies.forEach((dependent, moduleDependencies) -> {
+            if (!dependent.equals(module) && moduleDependencies.contains(module)) {
+                dependents.add(dependent);
+            }
+        });
+        return dependents;
+    }
+
+    private Set<Module> naiveClosure(Module module) {
+        Set<Module> reached = new HashSet<>(Set.of(module));
+        Deque<Module> queue = new ArrayDeque<>(reached);
+        while (!queue.isEmpty()) {
+            for (Module dependent : naiveDependents(queue.poll())) {
+                if (reached.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return reached;
+    }
+
+    private void module(String artifactId, String... dependsOn) {
+        Set<Module> moduleDependencies = new HashSet<>();
+        for (String dependency : dependsOn) {
+            moduleDependencies.add(m(dependency));
+        }
+        dependencies.put(m(artifactId), moduleDependencies);
+    }
+
+    private ModuleGraph graph() {
+        return new ModuleGraph(dependencies, parents);
+    }
+
+    private static Module m(String artifactId) {
+        return new Module("g", artifactId);
+    }
+}
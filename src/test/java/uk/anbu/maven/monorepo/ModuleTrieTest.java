@@ -0,0 +1,94 @@
+package uk.anbu.maven.monorepo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModuleTrieTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void attributesPathsToTheDeepestModule() {
+        ModuleTrie trie = trie("a", "a/b", "x/y");
+
+        assertEquals(Optional.of("a"), trie.findModule("a/src/main/java/A.java"));
+        assertEquals(Optional.of("a"), trie.findModule("a/pom.xml"));
+        assertEquals(Optional.of("a/b"), trie.findModule("a/b/src/main/java/B.java"));
+        assertEquals(Optional.of("a/b"), trie.findModule("a/b"));
+        assertEquals(Optional.of("x/y"), trie.findModule("x/y/pom.xml"));
+        assertEquals(Optional.empty(), trie.findModule("x/README.md"));
+    }
+
+    @Test
+    void doesNotMatchASiblingThatSharesAPrefix() {
+        ModuleTrie trie = trie("a", "ab");
+
+        assertEquals(Optional.of("ab"), trie.findModule("ab/pom.xml"));
+        assertEquals(Optional.of("a"), trie.findModule("a/pom.xml"));
+        assertEquals(Optional.empty(), trie.findModule("abc/pom.xml"));
+        assertEquals(Optional.empty(), trie.findModule("a-b/pom.xml"));
+    }
+
+    @Test
+    void leavesRootLevelFilesOutsideEveryModule() {
+        ModuleTrie trie = trie("a", "a/b");
+
+        assertEquals(Optional.empty(), trie.findModule("pom.xml"));
+        assertEquals(Optional.empty(), trie.findModule(".gitignore"));
+        assertEquals(Optional.empty(), trie.findModule(""));
+    }
+
+    @Test
+    void knowsWhichDirectoriesHaveModulesBelow() {
+        ModuleTrie trie = trie("a", "a/b", "x/y");
+
+        assertTrue(trie.hasModulesBelow(""));
+        assertTrue(trie.hasModulesBelow("a"));
+        assertFalse(trie.hasModulesBelow("a/b"));
+        assertTrue(trie.hasModulesBelow("x"));
+        assertFalse(trie.hasModulesBelow("z"));
+        assertFalse(trie.add("a"));
+    }
+
+    @Test
+    void followsDeclaredModulesFromTheRootPom() throws IOException {
+        pom("", "<modules><module>a</module><module>ab</module></modules>");
+        pom("a", "<modules><module>b</module></modules>");
+        pom("a/b", "");
+        pom("ab", "");
+
+        ModuleTrie trie = ModuleTrie.fromDeclaredModules(root.resolve("pom.xml").toFile(), new ModelCache());
+
+        assertEquals(List.of("a", "ab"), trie.getTopLevelModules());
+        assertEquals(List.of("a", "a/b", "ab"), trie.getAllModules().stream().sorted().toList());
+        assertEquals(Optional.of("a/b"), trie.findModule("a/b/src/B.java"));
+        assertEquals(Optional.of("ab"), trie.findModule("ab/src/Ab.java"));
+    }
+
+    private static ModuleTrie trie(String... modules) {
+        ModuleTrie trie = new ModuleTrie();
+        for (String module : modules) {
+            trie.add(module);
+        }
+        return trie;
+    }
+
+    private void pom(String module, String content) throws IOException {
+        Path directory = root.resolve(module);
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve("pom.xml"), "<project><modelVersion>4.0.0</modelVersion><groupId>g</groupId>"
+                + "<artifactId>" + (module.isEmpty() ? "root" : module.replace('/', '-')) + "</artifactId>"
+                + "<version>1</version><packaging>pom</packaging>" + content + "</project>");
+    }
+}
@@ -0,0 +1,143 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PairChangeDetectorTest {
+
+    @TempDir
+    Path root;
+
+    private Git git;
+    private ModuleTrie trie;
+    private RevCommit mergeBase;
+
+    @BeforeEach
+    void branches() throws Exception {
+        git = Git.init().setDirectory(root.toFile()).setInitialBranch("main").call();
+        pom("", "<modules><module>a</module><module>c</module></modules>");
+        pom("a", "");
+        pom("c", "");
+        write("a/src/main/java/A.java", "class A {}");
+        write("c/src/main/java/C.java", "class C {}");
+        mergeBase = commit();
+        trie = ModuleTrie.fromDeclaredModules(root.resolve("pom.xml").toFile(), new ModelCache());
+
+        branch("edit-a");
+        write("a/src/main/java/A.java", "class A { int a; }");
+        commit();
+
+        branch("edit-c");
+        write("c/src/main/java/C.java", "class C { int c; }");
+        commit();
+
+        // the same edits as on the two branches above, so only the root tree differs
+        branch("edit-both");
+        write("a/src/main/java/A.java", "class A { int a; }");
+        write("c/src/main/java/C.java", "class C { int c; }");
+        commit();
+
+        // main moves on, which must not show up on the branches
+        git.checkout().setName("main").call();
+        write("c/src/main/java/C2.java", "class C2 {}");
+        commit();
+    }
+
+    @AfterEach
+    void close() {
+        git.close();
+    }
+
+    @Test
+    void sharesMergeBasesTreeDiffsAndModuleSubtrees() throws Exception {
+        var detector = new PairChangeDetector(git.getRepository(), moduleChangeDetector());
+
+        List<PairChangeDetector.Result> results = detector.detect(List.of(
+                PairChangeDetector.Pair.parse("main...edit-a"),
+                PairChangeDetector.Pair.parse("main...edit-c"),
+                PairChangeDetector.Pair.parse("main...edit-both"),
+                PairChangeDetector.Pair.parse("main...edit-a")));
+
+        for (PairChangeDetector.Result result : results) {
+            assertNull(result.error());
+            assertEquals(mergeBase.getName(), result.mergeBase());
+        }
+        assertEquals(List.of("a"), results.get(0).changedModules());
+        assertEquals(Map.of("a", Set.of(ChangeKind.MAIN)), results.get(0).changeKinds());
+        assertEquals(List.of("c"), results.get(1).changedModules());
+        assertEquals(List.of("a", "c"), results.get(2).changedModules());
+        assertEquals(Map.of("a", Set.of(ChangeKind.MAIN), "c", Set.of(ChangeKind.MAIN)),
+                results.get(2).changeKinds());
+        assertEquals(results.get(0).changedModules(), results.get(3).changedModules());
+
+        assertEquals(3, detector.getMergeBasesComputed());
+        assertEquals(3, detector.getTreeDiffsComputed());
+        // a and c are walked once each, 5 entries apiece; edit-both only compares the two module entries
+        assertEquals(5 + 5 + 2, detector.getEntriesCompared());
+    }
+
+    @Test
+    void reusedModuleSubtreesGiveTheSameAnswerAsAFreshComparison() throws Exception {
+        var pairs = new PairChangeDetector(git.getRepository(), moduleChangeDetector());
+        pairs.detect(List.of(PairChangeDetector.Pair.parse("main...edit-a"),
+                PairChangeDetector.Pair.parse("main...edit-c")));
+        var reused = pairs.detect(List.of(PairChangeDetector.Pair.parse("main...edit-both"))).get(0);
+
+        var fresh = moduleChangeDetector();
+        Set<String> changed;
+        try (ObjectReader reader = git.getRepository().newObjectReader()) {
+            changed = fresh.findChangedModules(reader, tree("main~1"), tree("edit-both"));
+        }
+
+        assertEquals(List.copyOf(changed), reused.changedModules());
+        assertEquals(fresh.getChangeKinds(), reused.changeKinds());
+        assertEquals(10, fresh.getEntriesCompared());
+    }
+
+    private ModuleChangeDetector moduleChangeDetector() {
+        return new ModuleChangeDetector(new SystemStreamLog(), trie, List.of(), new ChangeClassifier(List.of()));
+    }
+
+    private ObjectId tree(String revision) throws Exception {
+        return git.getRepository().resolve(revision + "^{tree}");
+    }
+
+    private void branch(String name) throws Exception {
+        git.checkout().setCreateBranch(true).setName(name).setStartPoint(mergeBase).call();
+    }
+
+    private void pom(String module, String content) throws Exception {
+        write((module.isEmpty() ? "" : module + "/") + "pom.xml", "<project><modelVersion>4.0.0</modelVersion>"
+                + "<groupId>g</groupId><artifactId>" + (module.isEmpty() ? "root" : module)
+                + "</artifactId><version>1</version><packaging>pom</packaging>" + content + "</project>");
+    }
+
+    private void write(String path, String content) throws Exception {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    private RevCommit commit() throws Exception {
+        git.add().addFilepattern(".").call();
+        PersonIdent author = new PersonIdent("test", "test@example.com");
+        return git.commit().setMessage("change").setAuthor(author).setCommitter(author).setSign(false).call();
+    }
+}
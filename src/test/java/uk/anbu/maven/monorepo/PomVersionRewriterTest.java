@@ -0,0 +1,222 @@
+package uk.anbu.maven.monorepo;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PomVersionRewriterTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void bumpsModuleAndTheSiblingDependenciesOnIt() throws IOException {
+        aggregator("a", "b");
+        pom("a", "<groupId>g</groupId><artifactId>a</artifactId><version>1.2.3</version>");
+        pom("b", "<groupId>g</groupId><artifactId>b</artifactId><version>2.0.0</version>"
+                + dependency("g", "a", "1.2.3"));
+
+        var result = rewriter().incrementVersions(List.of("a"));
+
+        assertEquals(Map.of("a", "1.2.4"), result.newVersions());
+        assertTrue(read("a").contains("<version>1.2.4</version>"));
+        assertTrue(read("b").contains(dependency("g", "a", "1.2.4")));
+        assertTrue(read("b").contains("<version>2.0.0</version>"));
+    }
+
+    @Test
+    void timesEveryModuleAndRewrite() throws IOException {
+        aggregator("a", "b");
+        pom("a", "<groupId>g</groupId><artifactId>a</artifactId><version>1.2.3</version>");
+        pom("b", "<groupId>g</groupId><artifactId>b</artifactId><version>2.0.0</version>"
+                + dependency("g", "a", "1.2.3"));
+        RunReport runReport = new RunReport();
+
+        new PomVersionRewriter(new SystemStreamLog(), root.toFile(), runReport).incrementVersions(List.of("a"));
+
+        String json = runReport.toJson("test");
+        assertTrue(json.contains("\"version-bump:a\""), json);
+        assertTrue(json.contains("\"version-rewrite:a\""), json);
+        assertTrue(json.contains("\"version-rewrite:b\""), json);
+    }
+
+    @Test
+    void resolvesProjectGroupIdInDependencies() throws IOException {
+        aggregator("a", "b");
+        pom("a", "<groupId>g</groupId><artifactId>a</artifactId><version>1.0.0</version>");
+        pom("b", "<groupId>g</groupId><artifactId>b</artifactId><version>1.0.0</version>"
+                + dependency("${project.groupId}", "a", "1.0.0"));
+
+        rewriter().incrementVersions(List.of("a"));
+
+        assertTrue(read("b").contains(dependency("${project.groupId}", "a", "1.0.1")));
+    }
+
+    @Test
+    void propagatesToChildrenThatFollowTheParentVersion() throws IOException {
+        aggregator("p");
+        pom("p", "<groupId>g</groupId><artifactId>p</artifactId><version>3.1.4</version>"
+                + "<packaging>pom</packaging><modules><module>inherits</module><module>own</module>"
+                + "<module>pinned</module></modules>");
+        pom("p/inherits", parent("3.1.4") + "<artifactId>inherits</artifactId>");
+        pom("p/own", parent("3.1.4") + "<artifactId>own</artifactId><version>3.1.4</version>");
+        pom("p/pinned", parent("3.1.4") + "<artifactId>pinned</artifactId><version>9.0.0</version>");
+
+        var result = rewriter().incrementVersions(List.of("p", "p/inherits"));
+
+        assertEquals(Map.of("p", "3.1.5", "p/inherits", "inherited"), result.newVersions());
+        assertEquals(pomText(parent("3.1.5") + "<artifactId>inherits</artifactId>"), read("p/inherits"));
+        assertEquals(pomText(parent("3.1.5") + "<artifactId>own</artifactId><version>3.1.5</version>"),
+                read("p/own"));
+        assertEquals(pomText(parent("3.1.5") + "<artifactId>pinned</artifactId><version>9.0.0</version>"),
+                read("p/pinned"));
+    }
+
+    @Test
+    void skipsPropertyVersionsAndLeavesThemAlone() throws IOException {
+        aggregator("a");
+        String content = "<groupId>g</groupId><artifactId>a</artifactId><version>${revision}</version>";
+        pom("a", content);
+
+        var result = rewriter().incrementVersions(List.of("a"));
+
+        assertEquals(Map.of("a", "skipped"), result.newVersions());
+        assertTrue(result.unsupported().isEmpty());
+        assertEquals(pomText(content), read("a"));
+    }
+
+    @Test
+    void bumpsTheLastNumberOfOtherVersionsLikeTheFork() throws IOException {
+        aggregator("a", "b", "c");
+        pom("a", "<groupId>g</groupId><artifactId>a</artifactId><version>1.0-SNAPSHOT</version>");
+        pom("b", "<groupId>g</groupId><artifactId>b</artifactId><version>2.1</version>"
+                + dependency("g", "a", "1.0-SNAPSHOT"));
+        pom("c", "<groupId>g</groupId><artifactId>c</artifactId><version>RELEASE</version>");
+
+        var result = rewriter().incrementVersions(List.of("a", "b", "c"));
+
+        assertEquals(Map.of("a", "1.1-SNAPSHOT", "b", "2.2"), result.newVersions());
+        assertEquals(List.of("c"), result.unsupported());
+        assertTrue(read("b").contains(dependency("g", "a", "1.1-SNAPSHOT")));
+    }
+
+    @Test
+    void skipsInheritedVersionsWhenTheParentIsNotBumped() throws IOException {
+        aggregator("p");
+        pom("p", "<groupId>g</groupId><artifactId>p</artifactId><version>3.1.4</version>"
+                + "<packaging>pom</packaging><modules><module>inherits</module></modules>");
+        String content = parent("3.1.4") + "<artifactId>inherits</artifactId>";
+        pom("p/inherits", content);
+
+        var result = rewriter().incrementVersions(List.of("p/inherits"));
+
+        assertEquals(Map.of("p/inherits", "skipped"), result.newVersions());
+        assertEquals(pomText(content), read("p/inherits"));
+        assertEquals(pomText("<groupId>g</groupId><artifactId>p</artifactId><version>3.1.4</version>"
+                + "<packaging>pom</packaging><modules><module>inherits</module></modules>"), read("p"));
+    }
+
+    @Test
+    void rewritesManagedAndPluginDependenciesButNotPluginConfiguration() throws IOException {
+        aggregator("a", "b");
+        pom("a", "<groupId>g</groupId><artifactId>a</artifactId><version>1.0.0</version>");
+        String managed = "<dependencyManagement>" + dependency("g", "a", "1.0.0") + "</dependencyManagement>";
+        String plugin = "<build><plugins><plugin><artifactId>tool</artifactId>" + dependency("g", "a", "1.0.0")
+                + "<configuration><extra>" + dependency("g", "a", "1.0.0").replace("dependencies>", "list>")
+                + "</extra></configuration></plugin></plugins></build>";
+        String profile = "<profiles><profile><id>x</id>" + dependency("g", "a", "1.0.0") + "</profile></profiles>";
+        pom("b", "<groupId>g</groupId><artifactId>b</artifactId><version>1.0.0</version>" + managed + plugin
+                + profile);
+
+        rewriter().incrementVersions(List.of("a"));
+
+        assertEquals(pomText("<groupId>g</groupId><artifactId>b</artifactId><version>1.0.0</version>"
+                + managed.replace("1.0.0", "1.0.1")
+                + plugin.replaceFirst("1\\.0\\.0", "1.0.1")
+                + profile.replace("1.0.0", "1.0.1")), read("b"));
+    }
+
+    @Test
+    void fallsBackToTheForkForEveryModuleWhenAPomIsUnbalanced() throws IOException {
+        aggregator("a", "b");
+        pom("a", "<groupId>g</groupId><artifactId>a</artifactId><version>1.0.0</version>");
+        String broken = "<groupId>g</groupId><artifactId>b</artifactId></version>" + dependency("g", "a", "1.0.0");
+        pom("b", broken);
+
+        var result = rewriter().incrementVersions(List.of("a"));
+
+        assertEquals(List.of("a"), result.unsupported());
+        assertTrue(result.newVersions().isEmpty());
+        assertEquals(pomText("<groupId>g</groupId><artifactId>a</artifactId><version>1.0.0</version>"), read("a"));
+        assertEquals(pomText(broken), read("b"));
+    }
+
+    @Test
+    void skipsModulesWithoutPomOrVersion() throws IOException {
+        aggregator("a");
+        pom("a", "<groupId>g</groupId><artifactId>a</artifactId>");
+        Files.createDirectories(root.resolve("docs"));
+
+        var result = rewriter().incrementVersions(List.of("a", "docs"));
+
+        assertEquals(Map.of("a", "skipped", "docs", "skipped"), result.newVersions());
+        assertTrue(result.unsupported().isEmpty());
+    }
+
+    @Test
+    void nextNumberedVersionKeepsTheQualifier() {
+        assertEquals(Optional.of("1.1-SNAPSHOT"), PomVersionRewriter.nextNumberedVersion("1.0-SNAPSHOT"));
+        assertEquals(Optional.of("2.2"), PomVersionRewriter.nextNumberedVersion("2.1"));
+        assertEquals(Optional.of("1.0.1.Final"), PomVersionRewriter.nextNumberedVersion("1.0.0.Final"));
+        assertEquals(Optional.of("6"), PomVersionRewriter.nextNumberedVersion("5"));
+        assertEquals(Optional.empty(), PomVersionRewriter.nextNumberedVersion("v1"));
+        assertEquals(Optional.of("1.2.4"), PomVersionRewriter.nextModuleVersion("1.2.3"));
+        assertEquals(Optional.of("1.1-SNAPSHOT"), PomVersionRewriter.nextModuleVersion("1.0-SNAPSHOT"));
+    }
+
+    private PomVersionRewriter rewriter() {
+        return new PomVersionRewriter(new SystemStreamLog(), root.toFile());
+    }
+
+    private void aggregator(String... modules) throws IOException {
+        StringBuilder content = new StringBuilder(
+                "<groupId>g</groupId><artifactId>root</artifactId><version>1</version><packaging>pom</packaging><modules>");
+        for (String module : modules) {
+            content.append("<module>").append(module).append("</module>");
+        }
+        pom("", content.append("</modules>").toString());
+    }
+
+    private void pom(String module, String content) throws IOException {
+        Path directory = root.resolve(module);
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve("pom.xml"), pomText(content));
+    }
+
+    private String read(String module) throws IOException {
+        return Files.readString(root.resolve(module).resolve("pom.xml"));
+    }
+
+    private static String pomText(String content) {
+        return "<project>\n" + content + "\n</project>\n";
+    }
+
+    private static String parent(String version) {
+        return "<parent><groupId>g</groupId><artifactId>p</artifactId><version>" + version + "</version></parent>";
+    }
+
+    private static String dependency(String groupId, String artifactId, String version) {
+        return "<dependencies><dependency><groupId>" + groupId + "</groupId><artifactId>" + artifactId
+                + "</artifactId><version>" + version + "</version></dependency></dependencies>";
+    }
+}
@@ -0,0 +1,106 @@
+package uk.anbu.maven.monorepo;
+
+import org.junit.jupiter.api.Test;
+import uk.anbu.maven.monorepo.DependencyUpdateAnalyzer.Module;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardPlanTest {
+
+    private final Map<Module, Set<Module>> dependencies = new LinkedHashMap<>();
+    private final Map<Module, Long> durations = new HashMap<>();
+
+    @Test
+    void handsOutEachWaveLongestFirst() {
+        module("a", 7);
+        module("b", 5);
+        module("c", 4);
+        module("d", 3);
+        module("e", 3);
+        module("f", 6, "a");
+        module("g", 2, "b");
+        BuildPlan plan = plan();
+
+        ShardPlan shards = ShardPlan.of(plan, 2, durations::get);
+
+        assertEveryModuleOnceInItsWave(plan, shards);
+        // a to the first shard, b and c to the second, d to the first, e to the second, which is less loaded
+        assertEquals(List.of(List.of(m("a"), m("d")), List.of(m("f"))), shards.shards().get(0).waves());
+        assertEquals(List.of(List.of(m("b"), m("c"), m("e")), List.of(m("g"))), shards.shards().get(1).waves());
+        assertEquals(16, shards.shards().get(0).estimatedMillis());
+        assertEquals(14, shards.shards().get(1).estimatedMillis());
+        // the slowest shard of each wave: 12 then 6
+        assertEquals(18, shards.estimatedMillis());
+    }
+
+    @Test
+    void leavesSpareShardsIdle() {
+        module("a", 4);
+        module("b", 1, "a");
+        BuildPlan plan = plan();
+
+        ShardPlan shards = ShardPlan.of(plan, 3, durations::get);
+
+        assertEveryModuleOnceInItsWave(plan, shards);
+        assertEquals(List.of(List.of(), List.of()), shards.shards().get(2).waves());
+        assertEquals(5, shards.estimatedMillis());
+    }
+
+    @Test
+    void addsUpEverythingOnASingleShard() {
+        module("a", 4);
+        module("b", 2);
+        module("c", 1, "a", "b");
+        BuildPlan plan = plan();
+
+        ShardPlan shards = ShardPlan.of(plan, 1, durations::get);
+
+        assertEveryModuleOnceInItsWave(plan, shards);
+        assertEquals(7, shards.estimatedMillis());
+        assertEquals(7, shards.shards().get(0).estimatedMillis());
+    }
+
+    @Test
+    void needsAtLeastOneShard() {
+        module("a", 1);
+
+        assertThrows(IllegalArgumentException.class, () -> ShardPlan.of(plan(), 0, durations::get));
+    }
+
+    private static void assertEveryModuleOnceInItsWave(BuildPlan plan, ShardPlan shards) {
+        for (ShardPlan.Shard shard : shards.shards()) {
+            assertEquals(plan.waves().size(), shard.waves().size());
+        }
+        for (int wave = 0; wave < plan.waves().size(); wave++) {
+            List<Module> assigned = new ArrayList<>();
+            for (ShardPlan.Shard shard : shards.shards()) {
+                assigned.addAll(shard.waves().get(wave));
+            }
+            assertEquals(plan.waves().get(wave).size(), assigned.size(), "modules assigned in wave " + wave);
+            assertEquals(Set.copyOf(plan.waves().get(wave)), Set.copyOf(assigned), "modules of wave " + wave);
+        }
+    }
+
+    private void module(String artifactId, long duration, String... dependsOn) {
+        dependencies.put(m(artifactId), Set.of(Arrays.stream(dependsOn).map(ShardPlanTest::m)
+                .toArray(Module[]::new)));
+        durations.put(m(artifactId), duration);
+    }
+
+    private BuildPlan plan() {
+        return BuildPlan.of(new ModuleGraph(dependencies, new HashMap<>()), List.copyOf(dependencies.keySet()));
+    }
+
+    private static Module m(String artifactId) {
+        return new Module("g", artifactId);
+    }
+}